@@ -0,0 +1,144 @@
+package editortrees;
+
+import java.util.Arrays;
+
+// A NodePool that keeps every node field in its own primitive array on the
+// Java heap.
+
+public class ArrayNodePool extends NodePool {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private char[] element;
+	private int[] left, right, rank, size;
+	private byte[] height, balance;
+
+	/**
+	 * Creates an empty pool with room for a few nodes.
+	 *
+	 * @param
+	 *
+	 * @return none
+	 */
+	public ArrayNodePool() {
+
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty pool with room for capacity nodes before it has to
+	 * grow.
+	 *
+	 * @param capacity
+	 *
+	 * @return none
+	 */
+	public ArrayNodePool(int capacity) {
+
+		int length = Math.max(capacity, 1) + 1;
+		this.element = new char[length];
+		this.left = new int[length];
+		this.right = new int[length];
+		this.rank = new int[length];
+		this.size = new int[length];
+		this.height = new byte[length];
+		this.balance = new byte[length];
+		this.initNullNode();
+	}
+
+	@Override
+	public int capacity() {
+
+		return this.element.length - 1;
+	}
+
+	/**
+	 * Doubles the length of every array.
+	 *
+	 * @param
+	 *
+	 * @return
+	 */
+	@Override
+	protected void grow() {
+
+		int length = this.element.length * 2;
+		this.element = Arrays.copyOf(this.element, length);
+		this.left = Arrays.copyOf(this.left, length);
+		this.right = Arrays.copyOf(this.right, length);
+		this.rank = Arrays.copyOf(this.rank, length);
+		this.size = Arrays.copyOf(this.size, length);
+		this.height = Arrays.copyOf(this.height, length);
+		this.balance = Arrays.copyOf(this.balance, length);
+	}
+
+	@Override
+	public char element(int node) {
+		return this.element[node];
+	}
+
+	@Override
+	public void setElement(int node, char ch) {
+		this.element[node] = ch;
+	}
+
+	@Override
+	public int left(int node) {
+		return this.left[node];
+	}
+
+	@Override
+	public void setLeft(int node, int child) {
+		this.left[node] = child;
+	}
+
+	@Override
+	public int right(int node) {
+		return this.right[node];
+	}
+
+	@Override
+	public void setRight(int node, int child) {
+		this.right[node] = child;
+	}
+
+	@Override
+	public int rank(int node) {
+		return this.rank[node];
+	}
+
+	@Override
+	public void setRank(int node, int rank) {
+		this.rank[node] = rank;
+	}
+
+	@Override
+	public int size(int node) {
+		return this.size[node];
+	}
+
+	@Override
+	public void setSize(int node, int size) {
+		this.size[node] = size;
+	}
+
+	@Override
+	public int height(int node) {
+		return this.height[node];
+	}
+
+	@Override
+	public void setHeight(int node, int height) {
+		this.height[node] = (byte) height;
+	}
+
+	@Override
+	public byte balance(int node) {
+		return this.balance[node];
+	}
+
+	@Override
+	public void setBalance(int node, byte balance) {
+		this.balance[node] = balance;
+	}
+}
@@ -0,0 +1,12 @@
+package editortrees;
+
+// Receives the characters of a tree one at a time, without boxing them.
+public interface CharConsumer {
+
+	/**
+	 * Called once for each character, in order.
+	 * 
+	 * @param ch
+	 */
+	void accept(char ch);
+}
@@ -0,0 +1,151 @@
+package editortrees;
+
+import static editortrees.Node.NULL_NODE;
+
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+
+// Walks the characters at positions [start, end) of a tree without boxing
+// them. trySplit() cuts the range at the position of a subtree's root, so
+// the two halves cover whole subtrees wherever they can and a parallel
+// stream hands each core a part of the tree rather than a copy of it.
+//
+// The tree must not be edited while a stream over it is running.
+class CharSpliterator implements Spliterator.OfInt {
+
+	// Smallest known subtree holding the range, and the position of its
+	// first character.
+	private Node top;
+	private int offset;
+	private int start;
+	private final int end;
+	// In-order stack, made on the first advance; stack[depth - 1] holds the
+	// character at start.
+	private Node[] stack;
+	private int depth;
+
+	/**
+	 * @param root,
+	 *            start, end
+	 */
+	CharSpliterator(Node root, int start, int end) {
+
+		this(root, 0, start, end);
+	}
+
+	private CharSpliterator(Node top, int offset, int start, int end) {
+
+		this.top = top;
+		this.offset = offset;
+		this.start = start;
+		this.end = end;
+	}
+
+	@Override
+	public OfInt trySplit() {
+
+		if (this.stack != null || this.end - this.start < 2) {
+			return null;
+		}
+		// Narrow down to the smallest subtree holding the whole range
+		this.descend(this.start);
+		int split = this.offset + this.top.rank;
+		if (split == this.start) {
+			// The range starts at this subtree's root; cut at the root of
+			// the subtree holding the rest of it instead
+			Node node = this.top.right;
+			int nodeOffset = split + 1;
+			while (true) {
+				int position = nodeOffset + node.rank;
+				if (this.end <= position) {
+					node = node.left;
+				} else if (split + 1 > position) {
+					nodeOffset = position + 1;
+					node = node.right;
+				} else {
+					split = position;
+					break;
+				}
+			}
+		}
+		CharSpliterator prefix = new CharSpliterator(this.top, this.offset, this.start, split);
+		this.start = split;
+		return prefix;
+	}
+
+	@Override
+	public boolean tryAdvance(IntConsumer action) {
+
+		if (this.start >= this.end) {
+			return false;
+		}
+		action.accept(this.nextChar());
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(IntConsumer action) {
+
+		while (this.start < this.end) {
+			action.accept(this.nextChar());
+		}
+	}
+
+	@Override
+	public long estimateSize() {
+
+		return this.end - this.start;
+	}
+
+	@Override
+	public int characteristics() {
+
+		return ORDERED | SIZED | SUBSIZED | NONNULL;
+	}
+
+	// Moves top down while the range fits inside one of its children.
+	private void descend(int from) {
+
+		while (true) {
+			int position = this.offset + this.top.rank;
+			if (this.end <= position) {
+				this.top = this.top.left;
+			} else if (from > position) {
+				this.offset = position + 1;
+				this.top = this.top.right;
+			} else {
+				return;
+			}
+		}
+	}
+
+	// Returns the character at start and moves past it. There must be one.
+	char nextChar() {
+
+		if (this.stack == null) {
+			this.descend(this.start);
+			this.stack = new Node[this.top.height + 1];
+			// Remember every node we pass on its left, since those come next
+			Node node = this.top;
+			int position = this.start - this.offset;
+			while (true) {
+				if (position <= node.rank) {
+					this.stack[this.depth++] = node;
+					if (position == node.rank) {
+						break;
+					}
+					node = node.left;
+				} else {
+					position -= node.rank + 1;
+					node = node.right;
+				}
+			}
+		}
+		Node node = this.stack[--this.depth];
+		this.start++;
+		for (Node child = node.right; child != NULL_NODE; child = child.left) {
+			this.stack[this.depth++] = child;
+		}
+		return node.element;
+	}
+}
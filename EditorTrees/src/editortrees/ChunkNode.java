@@ -0,0 +1,669 @@
+package editortrees;
+
+import java.util.Arrays;
+
+// A node in a height-balanced binary tree with rank whose nodes each hold a
+// run of characters instead of a single one. Rank and size count characters,
+// not nodes, so positions work exactly like they do in Node.
+//
+// A chunk's array only grows as far as its contents need, up to capacity.
+// Every chunk is kept at least half full unless it is the only one in its
+// tree, so the number of chunks stays proportional to size / capacity.
+
+public class ChunkNode {
+
+	// Fields used in the ChunkNode Class.
+	char[] chars;
+	int length;
+	int capacity;
+	ChunkNode left, right;
+	int rank, size, height;
+
+	public static final ChunkNode NULL_NODE = new ChunkNode();
+
+	/**
+	 * Creates a new node that owns chars and uses the first length of them.
+	 * The capacity of the node is chars.length.
+	 *
+	 * @param chars,
+	 *            length
+	 *
+	 * @return none
+	 */
+	public ChunkNode(char[] chars, int length) {
+
+		this(chars, length, chars.length);
+	}
+
+	/**
+	 * Creates a new node that owns chars and uses the first length of them.
+	 * The array is replaced by a larger one as the node fills up, until it
+	 * holds capacity characters.
+	 *
+	 * @param chars,
+	 *            length, capacity
+	 *
+	 * @return none
+	 */
+	public ChunkNode(char[] chars, int length, int capacity) {
+
+		this.chars = chars;
+		this.length = length;
+		this.capacity = capacity;
+		this.left = NULL_NODE;
+		this.right = NULL_NODE;
+		this.updateNode();
+	}
+
+	/**
+	 * Initialization of the NULL_NODE.
+	 *
+	 * @param
+	 *
+	 * @return
+	 */
+	private ChunkNode() {
+
+		this.chars = new char[0];
+		this.height = -1;
+	}
+
+	/**
+	 * Updates the height, size and rank of this node from its children.
+	 *
+	 * @param
+	 *
+	 * @return
+	 */
+	public void updateNode() {
+
+		this.height = Math.max(this.left.height, this.right.height) + 1;
+		this.size = this.left.size + this.right.size + this.length;
+		this.rank = this.left.size;
+	}
+
+	/**
+	 * Performs a single left rotation and returns the new root.
+	 *
+	 * @param
+	 *
+	 * @return ChunkNode
+	 */
+	public ChunkNode rotateLeft() {
+
+		ChunkNode node = this.right;
+		this.right = node.left;
+		node.left = this;
+		this.updateNode();
+		node.updateNode();
+		return node;
+	}
+
+	/**
+	 * Performs a single right rotation and returns the new root.
+	 *
+	 * @param
+	 *
+	 * @return ChunkNode
+	 */
+	public ChunkNode rotateRight() {
+
+		ChunkNode node = this.left;
+		this.left = node.right;
+		node.right = this;
+		this.updateNode();
+		node.updateNode();
+		return node;
+	}
+
+	/**
+	 * Restores the height-balance of this node, whose children differ in
+	 * height by at most two, and returns the new root. Fields must already be
+	 * up to date.
+	 *
+	 * @param
+	 *
+	 * @return ChunkNode
+	 */
+	public ChunkNode rebalance() {
+
+		if (this.right.height - this.left.height > 1) {
+			if (this.right.left.height > this.right.right.height) {
+				this.right = this.right.rotateRight();
+			}
+			return this.rotateLeft();
+		} else if (this.left.height - this.right.height > 1) {
+			if (this.left.right.height > this.left.left.height) {
+				this.left = this.left.rotateLeft();
+			}
+			return this.rotateRight();
+		}
+		return this;
+	}
+
+	/**
+	 * Gets the character at a specified position.
+	 *
+	 * @param position
+	 *
+	 * @return char
+	 */
+	public char get(int position) {
+
+		ChunkNode current = this;
+		while (current != NULL_NODE) {
+			if (position < current.rank) {
+				current = current.left;
+			} else if (position < current.rank + current.length) {
+				return current.chars[position - current.rank];
+			} else {
+				position -= current.rank + current.length;
+				current = current.right;
+			}
+		}
+		throw new IndexOutOfBoundsException("Not in tree");
+	}
+
+	/**
+	 * Inserts ch at the given position. The character goes into an existing
+	 * chunk when it has room; a full chunk is split in half first, and the
+	 * upper half becomes a new node right after this one.
+	 *
+	 * @param ch,
+	 *            position
+	 *
+	 * @return ChunkNode
+	 */
+	public ChunkNode add(char ch, int position) {
+
+		if (position < this.rank) {
+			this.left = this.left.add(ch, position);
+		} else if (position > this.rank + this.length) {
+			this.right = this.right.add(ch, position - (this.rank + this.length));
+		} else {
+			int offset = position - this.rank;
+			if (this.length == this.capacity) {
+				int half = this.length / 2;
+				char[] upper = Arrays.copyOfRange(this.chars, half, this.length);
+				ChunkNode next = new ChunkNode(upper, this.length - half, this.capacity);
+				this.length = half;
+				if (offset > half) {
+					next.insertChar(ch, offset - half);
+				} else {
+					this.insertChar(ch, offset);
+				}
+				this.right = this.right.addFirst(next);
+			} else {
+				this.insertChar(ch, offset);
+			}
+		}
+		this.updateNode();
+		return this.rebalance();
+	}
+
+	/**
+	 * Shifts the chunk up by one and puts ch at offset. The chunk must be
+	 * below capacity.
+	 *
+	 * @param ch,
+	 *            offset
+	 *
+	 * @return
+	 */
+	private void insertChar(char ch, int offset) {
+
+		this.ensureRoom(this.length + 1);
+		System.arraycopy(this.chars, offset, this.chars, offset + 1, this.length - offset);
+		this.chars[offset] = ch;
+		this.length++;
+		this.updateNode();
+	}
+
+	/**
+	 * Makes the array hold at least needed characters, doubling it so that
+	 * a chunk filled one character at a time is copied O(log capacity) times.
+	 *
+	 * @param needed
+	 *
+	 * @return
+	 */
+	private void ensureRoom(int needed) {
+
+		if (needed > this.chars.length) {
+			int grown = Math.min(this.capacity, Math.max(needed, 2 * this.chars.length));
+			this.chars = Arrays.copyOf(this.chars, grown);
+		}
+	}
+
+	/**
+	 * Returns whether this chunk is less than half full.
+	 *
+	 * @param
+	 *
+	 * @return boolean
+	 */
+	private boolean isUnderfull() {
+
+		return this.length < this.capacity / 2;
+	}
+
+	/**
+	 * Hangs node before everything else in this subtree.
+	 *
+	 * @param node
+	 *
+	 * @return ChunkNode
+	 */
+	public ChunkNode addFirst(ChunkNode node) {
+
+		if (this == NULL_NODE) {
+			return node;
+		}
+		this.left = this.left.addFirst(node);
+		this.updateNode();
+		return this.rebalance();
+	}
+
+	/**
+	 * Deletes the character at the given position. A chunk that drops below
+	 * half full is merged with or refilled from a neighbor.
+	 *
+	 * @param position
+	 *
+	 * @return ChunkNode
+	 */
+	public ChunkNode delete(int position) {
+
+		ChunkNode chunk = this;
+		int start = 0;
+		int offset = position;
+		while (offset < chunk.rank || offset >= chunk.rank + chunk.length) {
+			if (offset < chunk.rank) {
+				chunk = chunk.left;
+			} else {
+				start += chunk.rank + chunk.length;
+				offset -= chunk.rank + chunk.length;
+				chunk = chunk.right;
+			}
+		}
+		start += chunk.rank;
+		ChunkNode newRoot = this.deleteChar(position);
+		if (chunk.length > 0 && chunk.isUnderfull()) {
+			return mend(newRoot, start, chunk.length);
+		}
+		return newRoot;
+	}
+
+	/**
+	 * Deletes the character at the given position without looking at the
+	 * neighbors of its chunk. A chunk that becomes empty is removed from the
+	 * tree.
+	 *
+	 * @param position
+	 *
+	 * @return ChunkNode
+	 */
+	private ChunkNode deleteChar(int position) {
+
+		if (position < this.rank) {
+			this.left = this.left.deleteChar(position);
+		} else if (position >= this.rank + this.length) {
+			this.right = this.right.deleteChar(position - (this.rank + this.length));
+		} else {
+			int offset = position - this.rank;
+			System.arraycopy(this.chars, offset + 1, this.chars, offset, this.length - offset - 1);
+			this.length--;
+			if (this.length == 0) {
+				return this.removeSelf();
+			}
+		}
+		this.updateNode();
+		return this.rebalance();
+	}
+
+	/**
+	 * Removes this node from its subtree, replacing it with its successor
+	 * when it has two children.
+	 *
+	 * @param
+	 *
+	 * @return ChunkNode
+	 */
+	private ChunkNode removeSelf() {
+
+		if (this.left == NULL_NODE) {
+			return this.right;
+		} else if (this.right == NULL_NODE) {
+			return this.left;
+		}
+		ChunkNode successor = this.right.first();
+		successor.right = this.right.removeFirst();
+		successor.left = this.left;
+		successor.updateNode();
+		return successor.rebalance();
+	}
+
+	/**
+	 * Returns the left most node of this subtree.
+	 *
+	 * @param
+	 *
+	 * @return ChunkNode
+	 */
+	public ChunkNode first() {
+
+		ChunkNode current = this;
+		while (current.left != NULL_NODE) {
+			current = current.left;
+		}
+		return current;
+	}
+
+	/**
+	 * Returns the right most node of this subtree.
+	 *
+	 * @param
+	 *
+	 * @return ChunkNode
+	 */
+	public ChunkNode last() {
+
+		ChunkNode current = this;
+		while (current.right != NULL_NODE) {
+			current = current.right;
+		}
+		return current;
+	}
+
+	/**
+	 * Unlinks the left most node of this subtree and returns the new root.
+	 *
+	 * @param
+	 *
+	 * @return ChunkNode
+	 */
+	public ChunkNode removeFirst() {
+
+		if (this.left == NULL_NODE) {
+			return this.right;
+		}
+		this.left = this.left.removeFirst();
+		this.updateNode();
+		return this.rebalance();
+	}
+
+	/**
+	 * Unlinks the right most node of this subtree and returns the new root.
+	 *
+	 * @param
+	 *
+	 * @return ChunkNode
+	 */
+	public ChunkNode removeLast() {
+
+		if (this.right == NULL_NODE) {
+			return this.left;
+		}
+		this.right = this.right.removeLast();
+		this.updateNode();
+		return this.rebalance();
+	}
+
+	/**
+	 * Joins two trees around a connecting node in time proportional to the
+	 * difference of their heights, just like Node.join().
+	 *
+	 * @param leftRoot,
+	 *            connectingNode, rightRoot
+	 *
+	 * @return ChunkNode
+	 */
+	public static ChunkNode join(ChunkNode leftRoot, ChunkNode connectingNode, ChunkNode rightRoot) {
+
+		if (leftRoot.height - rightRoot.height > 1) {
+			leftRoot.right = join(leftRoot.right, connectingNode, rightRoot);
+			leftRoot.updateNode();
+			return leftRoot.rebalance();
+		} else if (rightRoot.height - leftRoot.height > 1) {
+			rightRoot.left = join(leftRoot, connectingNode, rightRoot.left);
+			rightRoot.updateNode();
+			return rightRoot.rebalance();
+		}
+		connectingNode.left = leftRoot;
+		connectingNode.right = rightRoot;
+		connectingNode.updateNode();
+		return connectingNode;
+	}
+
+	/**
+	 * Appends the tree rooted at rightRoot to the tree rooted at leftRoot,
+	 * borrowing the last node of the left tree to connect them. The two
+	 * chunks that meet at the seam are merged when they fit in one, and
+	 * evened out when either of them is less than half full.
+	 *
+	 * @param leftRoot,
+	 *            rightRoot
+	 *
+	 * @return ChunkNode
+	 */
+	public static ChunkNode concatenate(ChunkNode leftRoot, ChunkNode rightRoot) {
+
+		if (leftRoot == NULL_NODE) {
+			return rightRoot;
+		} else if (rightRoot == NULL_NODE) {
+			return leftRoot;
+		}
+		ChunkNode connectingNode = leftRoot.last();
+		leftRoot = leftRoot.removeLast();
+		ChunkNode next = rightRoot.first();
+		if (connectingNode.length + next.length <= connectingNode.capacity) {
+			rightRoot = rightRoot.removeFirst();
+			connectingNode.ensureRoom(connectingNode.length + next.length);
+			System.arraycopy(next.chars, 0, connectingNode.chars, connectingNode.length, next.length);
+			connectingNode.length += next.length;
+		} else if ((connectingNode.isUnderfull() || next.isUnderfull())
+				&& connectingNode.capacity == next.capacity) {
+			rightRoot = rightRoot.removeFirst();
+			connectingNode.evenOut(next);
+			next.left = NULL_NODE;
+			next.right = NULL_NODE;
+			next.updateNode();
+			rightRoot = rightRoot.addFirst(next);
+		}
+		return join(leftRoot, connectingNode, rightRoot);
+	}
+
+	/**
+	 * Moves characters between this chunk and the next one so that their
+	 * lengths differ by at most one. Together they must hold more than one
+	 * chunk's worth, so both end up at least half full.
+	 *
+	 * @param next
+	 *
+	 * @return
+	 */
+	private void evenOut(ChunkNode next) {
+
+		int share = (this.length + next.length) / 2;
+		if (this.length < share) {
+			int moved = share - this.length;
+			this.ensureRoom(share);
+			System.arraycopy(next.chars, 0, this.chars, this.length, moved);
+			System.arraycopy(next.chars, moved, next.chars, 0, next.length - moved);
+			next.length -= moved;
+		} else {
+			int moved = this.length - share;
+			next.ensureRoom(next.length + moved);
+			System.arraycopy(next.chars, 0, next.chars, moved, next.length);
+			System.arraycopy(this.chars, share, next.chars, 0, moved);
+			next.length += moved;
+		}
+		this.length = share;
+	}
+
+	/**
+	 * Fixes up the possibly underfull chunk of the given length that starts
+	 * at position start, by cutting the tree next to it and concatenating
+	 * the two halves again.
+	 *
+	 * @param root,
+	 *            start, length
+	 *
+	 * @return ChunkNode
+	 */
+	private static ChunkNode mend(ChunkNode root, int start, int length) {
+
+		ChunkNode[] rightRoot = new ChunkNode[1];
+		ChunkNode leftRoot = root.cut(start > 0 ? start : length, rightRoot);
+		return concatenate(leftRoot, rightRoot[0]);
+	}
+
+	/**
+	 * Splits this subtree so that every position before the given one stays
+	 * in the returned tree. The root of the rest is stored in rightRoot[0].
+	 * A chunk that straddles the split position is cut in two, and each
+	 * piece is mended with its neighbor if it ends up less than half full.
+	 *
+	 * @param position,
+	 *            rightRoot
+	 *
+	 * @return ChunkNode
+	 */
+	public ChunkNode split(int position, ChunkNode[] rightRoot) {
+
+		ChunkNode leftRoot = this.cut(position, rightRoot);
+		if (leftRoot != NULL_NODE && leftRoot.last().isUnderfull()) {
+			int length = leftRoot.last().length;
+			leftRoot = mend(leftRoot, leftRoot.size - length, length);
+		}
+		if (rightRoot[0] != NULL_NODE && rightRoot[0].first().isUnderfull()) {
+			rightRoot[0] = mend(rightRoot[0], 0, rightRoot[0].first().length);
+		}
+		return leftRoot;
+	}
+
+	/**
+	 * Splits this subtree like split() does, but leaves the chunks on either
+	 * side of the cut as they are.
+	 *
+	 * @param position,
+	 *            rightRoot
+	 *
+	 * @return ChunkNode
+	 */
+	private ChunkNode cut(int position, ChunkNode[] rightRoot) {
+
+		if (this == NULL_NODE) {
+			rightRoot[0] = NULL_NODE;
+			return NULL_NODE;
+		}
+		ChunkNode oldLeft = this.left;
+		ChunkNode oldRight = this.right;
+		if (position <= this.rank) {
+			ChunkNode leftPart = oldLeft.cut(position, rightRoot);
+			rightRoot[0] = join(rightRoot[0], this, oldRight);
+			return leftPart;
+		} else if (position >= this.rank + this.length) {
+			ChunkNode middlePart = oldRight.cut(position - (this.rank + this.length), rightRoot);
+			return join(oldLeft, this, middlePart);
+		}
+		// The split position is inside this chunk, so its tail moves into a
+		// new node that connects the right half
+		int offset = position - this.rank;
+		char[] tail = Arrays.copyOfRange(this.chars, offset, this.length);
+		ChunkNode tailNode = new ChunkNode(tail, this.length - offset, this.capacity);
+		this.length = offset;
+		rightRoot[0] = join(NULL_NODE, tailNode, oldRight);
+		return join(oldLeft, this, NULL_NODE);
+	}
+
+	/**
+	 * Copies the characters at positions from (inclusive) to to (exclusive)
+	 * of this subtree into dest, starting at offset.
+	 *
+	 * @param from,
+	 *            to, dest, offset
+	 *
+	 * @return int the offset just past the last character copied
+	 */
+	public int copyRange(int from, int to, char[] dest, int offset) {
+
+		if (this == NULL_NODE || from >= to) {
+			return offset;
+		}
+		if (from < this.rank) {
+			offset = this.left.copyRange(from, Math.min(to, this.rank), dest, offset);
+		}
+		int chunkFrom = Math.max(from - this.rank, 0);
+		int chunkTo = Math.min(to - this.rank, this.length);
+		if (chunkFrom < chunkTo) {
+			System.arraycopy(this.chars, chunkFrom, dest, offset, chunkTo - chunkFrom);
+			offset += chunkTo - chunkFrom;
+		}
+		int end = this.rank + this.length;
+		if (to > end) {
+			offset = this.right.copyRange(Math.max(from - end, 0), to - end, dest, offset);
+		}
+		return offset;
+	}
+
+	/**
+	 * Returns the number of nodes in this subtree.
+	 *
+	 * @param
+	 *
+	 * @return int
+	 */
+	public int nodeCount() {
+
+		if (this == NULL_NODE) {
+			return 0;
+		}
+		return this.left.nodeCount() + this.right.nodeCount() + 1;
+	}
+
+	/**
+	 * Builds a perfectly balanced tree holding chars[start] through
+	 * chars[end - 1], cut into as few chunks of at most chunkSize characters
+	 * as possible, all of about the same length.
+	 *
+	 * @param chars,
+	 *            start, end, chunkSize
+	 *
+	 * @return ChunkNode
+	 */
+	public static ChunkNode build(CharSequence chars, int start, int end, int chunkSize) {
+
+		int chunks = (end - start + chunkSize - 1) / chunkSize;
+		return build(chars, start, end, chunkSize, chunks, 0, chunks);
+	}
+
+	/**
+	 * Builds the chunks numbered firstChunk (inclusive) to lastChunk
+	 * (exclusive) of chars[start, end) cut into the given number of chunks.
+	 *
+	 * @param chars,
+	 *            start, end, chunkSize, chunks, firstChunk, lastChunk
+	 *
+	 * @return ChunkNode
+	 */
+	private static ChunkNode build(CharSequence chars, int start, int end, int chunkSize, int chunks,
+			int firstChunk, int lastChunk) {
+
+		if (firstChunk >= lastChunk) {
+			return NULL_NODE;
+		}
+		int middle = firstChunk + (lastChunk - firstChunk) / 2;
+		int from = start + (int) ((long) (end - start) * middle / chunks);
+		int to = start + (int) ((long) (end - start) * (middle + 1) / chunks);
+		char[] chunk = new char[to - from];
+		for (int i = from; i < to; i++) {
+			chunk[i - from] = chars.charAt(i);
+		}
+		ChunkNode node = new ChunkNode(chunk, to - from, chunkSize);
+		node.left = build(chars, start, end, chunkSize, chunks, firstChunk, middle);
+		node.right = build(chars, start, end, chunkSize, chunks, middle + 1, lastChunk);
+		node.updateNode();
+		return node;
+	}
+}
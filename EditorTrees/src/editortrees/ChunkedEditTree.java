@@ -0,0 +1,247 @@
+package editortrees;
+
+import static editortrees.ChunkNode.NULL_NODE;
+
+// A height-balanced tree with rank, like EditTree, that stores runs of
+// characters in each node instead of one character per node. A node costs
+// about the same as an EditTree node no matter how many characters it
+// holds, so large documents take a fraction of the memory and scans touch
+// far fewer objects.
+public class ChunkedEditTree {
+
+	public static final int DEFAULT_CHUNK_SIZE = 256;
+
+	private ChunkNode root;
+	private final int chunkSize;
+
+	/**
+	 * Construct an empty tree whose chunks hold DEFAULT_CHUNK_SIZE characters.
+	 */
+	public ChunkedEditTree() {
+
+		this(DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Construct an empty tree whose chunks hold chunkSize characters.
+	 *
+	 * @param chunkSize
+	 * @throws IllegalArgumentException
+	 *             if chunkSize is less than 2
+	 */
+	public ChunkedEditTree(int chunkSize) {
+
+		if (chunkSize < 2) {
+			throw new IllegalArgumentException("Chunks must hold at least 2 characters");
+		}
+		this.root = NULL_NODE;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Create a tree whose toString is s, in O(N) time, cut into as few
+	 * chunks as possible.
+	 *
+	 * @param s
+	 * @param chunkSize
+	 */
+	public ChunkedEditTree(CharSequence s, int chunkSize) {
+
+		this(chunkSize);
+		this.root = ChunkNode.build(s, 0, s.length(), chunkSize);
+	}
+
+	/**
+	 * Create a tree whose toString is s, with chunks of DEFAULT_CHUNK_SIZE.
+	 *
+	 * @param s
+	 */
+	public ChunkedEditTree(CharSequence s) {
+
+		this(s, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @return the number of characters in this tree
+	 */
+	public int size() {
+
+		return this.root.size;
+	}
+
+	/**
+	 * @return the height of this tree, counted in nodes
+	 */
+	public int height() {
+
+		return this.root.height;
+	}
+
+	/**
+	 * @return the number of chunks (nodes) in this tree
+	 */
+	public int chunkCount() {
+
+		return this.root.nodeCount();
+	}
+
+	/**
+	 * @param ch
+	 *            character to add to the end of this tree.
+	 */
+	public void add(char ch) {
+
+		this.add(ch, this.size());
+	}
+
+	/**
+	 * @param ch
+	 *            character to add
+	 * @param position
+	 *            character added in this inorder position
+	 * @throws IndexOutOfBoundsException
+	 *             if pos is negative or too large for this tree
+	 */
+	public void add(char ch, int position) throws IndexOutOfBoundsException {
+
+		if (position < 0 || position > this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		if (this.root == NULL_NODE) {
+			this.root = new ChunkNode(new char[1], 0, this.chunkSize);
+		}
+		this.root = this.root.add(ch, position);
+	}
+
+	/**
+	 * @param position
+	 *            position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char get(int position) throws IndexOutOfBoundsException {
+
+		if (position < 0 || position >= this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		return this.root.get(position);
+	}
+
+	/**
+	 * @param position
+	 *            location of the beginning of the string to retrieve
+	 * @param length
+	 *            length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException
+	 *             unless both pos and pos+length-1 are legitimate indexes
+	 *             within this tree.
+	 */
+	public String get(int position, int length) throws IndexOutOfBoundsException {
+
+		if (position < 0 || length < 0 || position + length > this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		char[] chars = new char[length];
+		this.root.copyRange(position, position + length, chars, 0);
+		return new String(chars);
+	}
+
+	/**
+	 * @param position
+	 *            position of character to delete from this tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char delete(int position) throws IndexOutOfBoundsException {
+
+		char deleted = this.get(position);
+		this.root = this.root.delete(position);
+		return deleted;
+	}
+
+	/**
+	 * Inserts all of s so that its first character ends up at position pos,
+	 * in O(log N + k) time.
+	 *
+	 * @param pos
+	 * @param s
+	 * @throws IndexOutOfBoundsException
+	 *             if pos is negative or greater than the size of this tree
+	 */
+	public void insert(int pos, CharSequence s) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos > this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		ChunkNode[] rightRoot = new ChunkNode[1];
+		ChunkNode leftRoot = this.root.split(pos, rightRoot);
+		ChunkNode middle = ChunkNode.build(s, 0, s.length(), this.chunkSize);
+		this.root = ChunkNode.concatenate(ChunkNode.concatenate(leftRoot, middle), rightRoot[0]);
+	}
+
+	/**
+	 * Append the contents of the other tree to this one in O(log N) time.
+	 * Other is made empty.
+	 *
+	 * @param other
+	 * @throws IllegalArgumentException
+	 *             if this == other
+	 */
+	public void concatenate(ChunkedEditTree other) throws IllegalArgumentException {
+
+		if (this == other) {
+			throw new IllegalArgumentException("Cannot concatenate the same tree");
+		}
+		this.root = ChunkNode.concatenate(this.root, other.root);
+		other.root = NULL_NODE;
+	}
+
+	/**
+	 * @param pos
+	 *            where to split this tree
+	 * @return a new tree containing all of the characters of this tree whose
+	 *         positions are >= pos. They are removed from this tree.
+	 * @throws IndexOutOfBoundsException
+	 */
+	public ChunkedEditTree split(int pos) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos > this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		ChunkNode[] rightRoot = new ChunkNode[1];
+		this.root = this.root.split(pos, rightRoot);
+		ChunkedEditTree rightTree = new ChunkedEditTree(this.chunkSize);
+		rightTree.root = rightRoot[0];
+		return rightTree;
+	}
+
+	/**
+	 * @param start
+	 *            position of beginning of string to delete
+	 * @param length
+	 *            length of string to delete
+	 * @return a tree containing the deleted string
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for this
+	 *             tree.
+	 */
+	public ChunkedEditTree delete(int start, int length) throws IndexOutOfBoundsException {
+
+		if (start < 0 || length < 0 || start + length > this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		ChunkedEditTree removed = this.split(start);
+		ChunkedEditTree rest = removed.split(length);
+		this.concatenate(rest);
+		return removed;
+	}
+
+	@Override
+	public String toString() {
+
+		char[] chars = new char[this.size()];
+		this.root.copyRange(0, chars.length, chars, 0);
+		return new String(chars);
+	}
+}
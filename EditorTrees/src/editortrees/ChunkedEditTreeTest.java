@@ -0,0 +1,196 @@
+package editortrees;
+
+import static editortrees.EditTreeTestSupport.makeString;
+import static editortrees.EditTreeTestSupport.maxHeight;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.ChunkedEditTree}, mostly by checking it
+ * against a StringBuilder given the same edits.
+ */
+public class ChunkedEditTreeTest {
+
+	private void assertBalanced(ChunkedEditTree t) {
+		assertTrue(t.height() <= maxHeight(t.chunkCount()));
+	}
+
+	@Test
+	public void testEmpty() {
+		ChunkedEditTree t = new ChunkedEditTree();
+		assertEquals("", t.toString());
+		assertEquals(0, t.size());
+		assertEquals(-1, t.height());
+		try {
+			t.get(0);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testAppendFillsChunks() {
+		ChunkedEditTree t = new ChunkedEditTree(8);
+		for (int i = 0; i < 100; i++) {
+			t.add((char) ('a' + i % 26));
+		}
+		assertEquals(100, t.size());
+		assertEquals('a', t.get(0));
+		assertEquals('v', t.get(99));
+		// Splitting a full chunk in half leaves chunks at least half full
+		assertTrue(t.chunkCount() <= 100 / 4 + 1);
+		assertBalanced(t);
+	}
+
+	@Test
+	public void testBuildFromString() {
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			s.append((char) ('a' + i % 26));
+		}
+		ChunkedEditTree t = new ChunkedEditTree(s, 64);
+		assertEquals(s.toString(), t.toString());
+		assertEquals((10000 + 63) / 64, t.chunkCount());
+		assertBalanced(t);
+		assertEquals(s.substring(1234, 5678), t.get(1234, 5678 - 1234));
+	}
+
+	@Test
+	public void testRandomEdits() {
+		Random random = new Random(230);
+		for (int chunkSize = 2; chunkSize <= 32; chunkSize *= 2) {
+			ChunkedEditTree t = new ChunkedEditTree(chunkSize);
+			StringBuilder expected = new StringBuilder();
+			for (int i = 0; i < 3000; i++) {
+				int op = random.nextInt(10);
+				if (op < 5 || expected.length() == 0) {
+					char ch = (char) ('a' + random.nextInt(26));
+					int pos = random.nextInt(expected.length() + 1);
+					t.add(ch, pos);
+					expected.insert(pos, ch);
+				} else if (op < 8) {
+					int pos = random.nextInt(expected.length());
+					assertEquals(expected.charAt(pos), t.delete(pos));
+					expected.deleteCharAt(pos);
+				} else if (op < 9) {
+					int pos = random.nextInt(expected.length() + 1);
+					String s = "<" + i + ">";
+					t.insert(pos, s);
+					expected.insert(pos, s);
+				} else {
+					int start = random.nextInt(expected.length());
+					int length = random.nextInt(Math.min(20, expected.length() - start) + 1);
+					assertEquals(expected.substring(start, start + length), t.delete(start, length).toString());
+					expected.delete(start, start + length);
+				}
+				assertEquals(expected.length(), t.size());
+				assertBalanced(t);
+			}
+			assertEquals(expected.toString(), t.toString());
+			for (int i = 0; i < expected.length(); i++) {
+				assertEquals(expected.charAt(i), t.get(i));
+			}
+		}
+	}
+
+	// Every chunk is at least half full unless it is the only one.
+	private void assertCompact(ChunkedEditTree t, int chunkSize) {
+		assertTrue(t.chunkCount() <= 2 * t.size() / chunkSize + 1);
+	}
+
+	@Test
+	public void testSmallInsertsShareChunks() {
+		ChunkedEditTree t = new ChunkedEditTree(64);
+		Random random = new Random(17);
+		for (int i = 0; i < 10000; i++) {
+			t.insert(random.nextInt(t.size() + 1), "x");
+		}
+		assertEquals(10000, t.size());
+		assertCompact(t, 64);
+		assertBalanced(t);
+	}
+
+	@Test
+	public void testSplitConcatenateCyclesDoNotFragment() {
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			s.append((char) ('a' + i % 26));
+		}
+		ChunkedEditTree t = new ChunkedEditTree(s, 256);
+		Random random = new Random(42);
+		for (int i = 0; i < 2000; i++) {
+			ChunkedEditTree rest = t.split(random.nextInt(t.size() + 1));
+			assertCompact(t, 256);
+			assertCompact(rest, 256);
+			t.concatenate(rest);
+			assertCompact(t, 256);
+		}
+		assertEquals(s.toString(), t.toString());
+		assertBalanced(t);
+	}
+
+	@Test
+	public void testChunkCountAfterRandomEdits() {
+		Random random = new Random(99);
+		for (int chunkSize = 2; chunkSize <= 64; chunkSize *= 4) {
+			ChunkedEditTree t = new ChunkedEditTree(chunkSize);
+			StringBuilder expected = new StringBuilder();
+			for (int i = 0; i < 5000; i++) {
+				int op = random.nextInt(4);
+				if (op == 0 || expected.length() == 0) {
+					int pos = random.nextInt(expected.length() + 1);
+					String s = makeString(random.nextInt(3 * chunkSize) + 1);
+					t.insert(pos, s);
+					expected.insert(pos, s);
+				} else if (op == 1) {
+					int pos = random.nextInt(expected.length());
+					assertEquals(expected.charAt(pos), t.delete(pos));
+					expected.deleteCharAt(pos);
+				} else if (op == 2) {
+					int start = random.nextInt(expected.length());
+					int length = random.nextInt(Math.min(2 * chunkSize, expected.length() - start) + 1);
+					t.delete(start, length);
+					expected.delete(start, start + length);
+				} else {
+					char ch = (char) ('a' + random.nextInt(26));
+					int pos = random.nextInt(expected.length() + 1);
+					t.add(ch, pos);
+					expected.insert(pos, ch);
+				}
+				assertCompact(t, chunkSize);
+				assertBalanced(t);
+			}
+			assertEquals(expected.toString(), t.toString());
+		}
+	}
+
+	@Test
+	public void testSplitAndConcatenate() {
+		String s = "the quick brown fox jumps over the lazy dog";
+		for (int i = 0; i <= s.length(); i++) {
+			ChunkedEditTree t = new ChunkedEditTree(s, 4);
+			ChunkedEditTree rest = t.split(i);
+			assertEquals(s.substring(0, i), t.toString());
+			assertEquals(s.substring(i), rest.toString());
+			assertBalanced(t);
+			assertBalanced(rest);
+			t.concatenate(rest);
+			assertEquals(s, t.toString());
+			assertEquals("", rest.toString());
+			assertBalanced(t);
+		}
+		ChunkedEditTree t = new ChunkedEditTree(s, 4);
+		try {
+			t.concatenate(t);
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
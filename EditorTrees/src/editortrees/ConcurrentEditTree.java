@@ -0,0 +1,236 @@
+package editortrees;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+// A tree that many threads can read and edit at the same time without locks.
+// The current contents are always a PersistentEditTree, which nobody ever
+// changes. A writer builds the next version from the current one by copying
+// the path it edits, then publishes it with a single compare-and-set; if
+// another writer got there first it simply tries again on the newer
+// version. Readers just read whichever version is current, so they never
+// block and never see a tree in the middle of a rotation.
+//
+// Every edit goes through update(), the only place a version is published.
+// Published versions are numbered, which VersionedEditTree builds on.
+public class ConcurrentEditTree {
+
+	// A published version: the tree together with its number.
+	static final class Head {
+
+		final long number;
+		final PersistentEditTree tree;
+
+		Head(long number, PersistentEditTree tree) {
+			this.number = number;
+			this.tree = tree;
+		}
+	}
+
+	// Makes the next version from the current one. apply() may run more
+	// than once when another writer publishes first, so it must not have
+	// side effects that outlive a failed attempt.
+	abstract static class Change {
+
+		abstract PersistentEditTree apply(PersistentEditTree version);
+	}
+
+	private final AtomicReference<Head> head;
+
+	/**
+	 * Construct an empty tree
+	 */
+	public ConcurrentEditTree() {
+
+		this(new PersistentEditTree());
+	}
+
+	/**
+	 * Construct a tree whose contents start out as version.
+	 * 
+	 * @param version
+	 */
+	public ConcurrentEditTree(PersistentEditTree version) {
+
+		this.head = new AtomicReference<Head>(new Head(0, version));
+	}
+
+	/**
+	 * @return the current version. It never changes, so a reader that needs
+	 *         several consistent reads should make them all on one snapshot.
+	 */
+	public PersistentEditTree snapshot() {
+
+		return this.head.get().tree;
+	}
+
+	/**
+	 * @return the current version together with its number
+	 */
+	Head head() {
+
+		return this.head.get();
+	}
+
+	/**
+	 * Applies change to the current version and publishes the result with a
+	 * compare-and-set, trying again on the newer version until it wins.
+	 * 
+	 * @param change
+	 * @return the version the change was applied to
+	 */
+	Head update(Change change) {
+
+		Head current;
+		Head next;
+		do {
+			current = this.head.get();
+			next = new Head(current.number + 1, change.apply(current.tree));
+		} while (!this.head.compareAndSet(current, next));
+		return current;
+	}
+
+	/**
+	 * @param ch
+	 *            character to add to the end of this tree.
+	 */
+	public void add(final char ch) {
+
+		this.update(new Change() {
+			@Override
+			PersistentEditTree apply(PersistentEditTree version) {
+				return version.add(ch);
+			}
+		});
+	}
+
+	/**
+	 * @param ch
+	 *            character to add
+	 * @param position
+	 *            character added in this inorder position
+	 * @throws IndexOutOfBoundsException
+	 *             if pos is negative or too large for this tree
+	 */
+	public void add(final char ch, final int position) throws IndexOutOfBoundsException {
+
+		this.update(new Change() {
+			@Override
+			PersistentEditTree apply(PersistentEditTree version) {
+				return version.add(ch, position);
+			}
+		});
+	}
+
+	/**
+	 * @param pos
+	 *            position the first character of s is inserted at
+	 * @param s
+	 *            characters to insert
+	 * @throws IndexOutOfBoundsException
+	 *             if pos is negative or greater than the size of this tree
+	 */
+	public void insert(final int pos, final CharSequence s) throws IndexOutOfBoundsException {
+
+		this.update(new Change() {
+			@Override
+			PersistentEditTree apply(PersistentEditTree version) {
+				return version.insert(pos, s);
+			}
+		});
+	}
+
+	/**
+	 * @param position
+	 *            position of character to delete from this tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char delete(final int position) throws IndexOutOfBoundsException {
+
+		Head previous = this.update(new Change() {
+			@Override
+			PersistentEditTree apply(PersistentEditTree version) {
+				return version.delete(position);
+			}
+		});
+		return previous.tree.get(position);
+	}
+
+	/**
+	 * @param start
+	 *            position of beginning of string to delete
+	 * @param length
+	 *            length of string to delete
+	 * @return the deleted string, as a version of its own
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for this
+	 *             tree.
+	 */
+	public PersistentEditTree delete(final int start, final int length) throws IndexOutOfBoundsException {
+
+		if (start < 0 || length < 0) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		// The attempt that wins leaves its deleted piece here last
+		final PersistentEditTree[] removed = new PersistentEditTree[1];
+		this.update(new Change() {
+			@Override
+			PersistentEditTree apply(PersistentEditTree version) {
+				PersistentEditTree[] outside = version.split(start);
+				PersistentEditTree[] inside = outside[1].split(length);
+				removed[0] = inside[0];
+				return outside[0].concatenate(inside[1]);
+			}
+		});
+		return removed[0];
+	}
+
+	/**
+	 * @param position
+	 *            position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char get(int position) throws IndexOutOfBoundsException {
+
+		return this.snapshot().get(position);
+	}
+
+	/**
+	 * @param position
+	 *            location of the beginning of the string to retrieve
+	 * @param length
+	 *            length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException
+	 */
+	public String get(int position, int length) throws IndexOutOfBoundsException {
+
+		return this.snapshot().get(position, length);
+	}
+
+	/**
+	 * @param s
+	 *            the string to look for
+	 * @return the position of the first occurrence of s in the current
+	 *         version; -1 if s does not occur
+	 */
+	public int find(String s) {
+
+		return this.snapshot().find(s);
+	}
+
+	/**
+	 * @return the number of characters in the current version
+	 */
+	public int size() {
+
+		return this.snapshot().size();
+	}
+
+	@Override
+	public String toString() {
+
+		return this.snapshot().toString();
+	}
+}
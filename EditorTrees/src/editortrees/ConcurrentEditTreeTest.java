@@ -0,0 +1,108 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.ConcurrentEditTree}.
+ */
+public class ConcurrentEditTreeTest {
+
+	private static final int WRITERS = 4;
+	private static final int READERS = 4;
+	private static final int EDITS_PER_WRITER = 5000;
+
+	@Test
+	public void testSingleThreaded() {
+		ConcurrentEditTree t = new ConcurrentEditTree();
+		t.add('b');
+		t.add('a', 0);
+		t.insert(2, "cdefg");
+		assertEquals("abcdefg", t.toString());
+		assertEquals('d', t.delete(3));
+		assertEquals("bce", t.delete(1, 3).toString());
+		assertEquals("afg", t.toString());
+		assertEquals("fg", t.get(1, 2));
+		assertEquals(1, t.find("fg"));
+		assertEquals(3, t.size());
+	}
+
+	@Test
+	public void testReadersDuringWrites() throws InterruptedException {
+		// Each writer adds its own digit at the front and a letter at the
+		// end, so every published version is some digits followed by as many
+		// letters.
+		final ConcurrentEditTree t = new ConcurrentEditTree();
+		final AtomicReference<String> failure = new AtomicReference<String>();
+		Thread[] writers = new Thread[WRITERS];
+		for (int w = 0; w < WRITERS; w++) {
+			final char digit = (char) ('0' + w);
+			writers[w] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < EDITS_PER_WRITER; i++) {
+						t.add('x');
+						t.add(digit, 0);
+					}
+				}
+			};
+		}
+		final AtomicBoolean done = new AtomicBoolean();
+		Thread[] readers = new Thread[READERS];
+		for (int r = 0; r < READERS; r++) {
+			readers[r] = new Thread() {
+				@Override
+				public void run() {
+					while (!done.get() && failure.get() == null) {
+						PersistentEditTree version = t.snapshot();
+						String s = version.toString();
+						if (s.length() != version.size()) {
+							failure.set("size " + version.size() + " for " + s.length() + " characters");
+						}
+						int digits = 0;
+						while (digits < s.length() && Character.isDigit(s.charAt(digits))) {
+							digits++;
+						}
+						for (int i = digits; i < s.length(); i++) {
+							if (s.charAt(i) != 'x') {
+								failure.set("unexpected " + s.charAt(i) + " at " + i);
+							}
+						}
+						if (s.length() - digits < digits || s.length() - digits > digits + WRITERS) {
+							failure.set(digits + " digits and " + (s.length() - digits) + " letters");
+						}
+					}
+				}
+			};
+		}
+		for (Thread reader : readers) {
+			reader.start();
+		}
+		for (Thread writer : writers) {
+			writer.start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		done.set(true);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		assertEquals(null, failure.get());
+		assertEquals(2 * WRITERS * EDITS_PER_WRITER, t.size());
+		int[] counts = new int[WRITERS];
+		String s = t.toString();
+		for (int i = 0; i < s.length() / 2; i++) {
+			counts[s.charAt(i) - '0']++;
+		}
+		for (int count : counts) {
+			assertEquals(EDITS_PER_WRITER, count);
+		}
+		assertTrue(s.endsWith("xxxx"));
+	}
+}
@@ -0,0 +1,226 @@
+package editortrees;
+
+import static editortrees.Node.NULL_NODE;
+
+import java.util.NoSuchElementException;
+
+// A position in an EditTree that can move one character at a time. The
+// cursor remembers the path from the root down to the node at its
+// position, so next() and previous() only walk to the neighbouring node:
+// a whole pass over the tree costs O(N) instead of O(N log N) for calling
+// get() at every position. After any edit to the tree, through this cursor
+// or not, the path is found again from the root on the next move.
+//
+// Like a ListIterator, the cursor sits between two characters; next()
+// returns the one after it and previous() the one before it.
+public class Cursor {
+
+	private final EditTree tree;
+	private int position;
+	// path[0] is the root and path[depth - 1] the node at position. An empty
+	// path means the cursor is at the end of the tree.
+	private Node[] path;
+	private int depth;
+	// The tree's modCount when the path was found
+	private int expectedModCount;
+
+	/**
+	 * Use EditTree.cursor() to make one.
+	 * 
+	 * @param tree
+	 * @param position
+	 */
+	Cursor(EditTree tree, int position) {
+
+		this.tree = tree;
+		this.position = position;
+		this.seek();
+	}
+
+	/**
+	 * @return the number of characters before the cursor
+	 */
+	public int position() {
+
+		return this.position;
+	}
+
+	/**
+	 * @return true unless the cursor is at the end of the tree
+	 */
+	public boolean hasNext() {
+
+		return this.position < this.tree.size();
+	}
+
+	/**
+	 * @return true unless the cursor is at the start of the tree
+	 */
+	public boolean hasPrevious() {
+
+		return this.position > 0;
+	}
+
+	/**
+	 * Moves the cursor to another position in O(log N) time.
+	 * 
+	 * @param position
+	 * @throws IndexOutOfBoundsException
+	 *             if position is negative or greater than the tree's size
+	 */
+	public void moveTo(int position) throws IndexOutOfBoundsException {
+
+		if (position < 0 || position > this.tree.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		this.position = position;
+		this.seek();
+	}
+
+	/**
+	 * @return the character after the cursor, without moving
+	 * @throws NoSuchElementException
+	 *             if the cursor is at the end of the tree
+	 */
+	public char peek() throws NoSuchElementException {
+
+		this.checkPath();
+		if (this.depth == 0) {
+			throw new NoSuchElementException();
+		}
+		return this.path[this.depth - 1].element;
+	}
+
+	/**
+	 * Moves forward one character, in amortized O(1) time.
+	 * 
+	 * @return the character moved over
+	 * @throws NoSuchElementException
+	 *             if the cursor is at the end of the tree
+	 */
+	public char next() throws NoSuchElementException {
+
+		char ch = this.peek();
+		this.position++;
+		Node node = this.path[this.depth - 1];
+		if (node.right != NULL_NODE) {
+			// The successor is the leftmost node of the right subtree
+			node = node.right;
+			this.path[this.depth++] = node;
+			while (node.left != NULL_NODE) {
+				node = node.left;
+				this.path[this.depth++] = node;
+			}
+		} else {
+			// Otherwise it is the nearest ancestor we came to from its left.
+			// At the last node this empties the path, as it should.
+			Node child;
+			do {
+				child = this.path[--this.depth];
+			} while (this.depth > 0 && this.path[this.depth - 1].right == child);
+		}
+		return ch;
+	}
+
+	/**
+	 * Moves back one character, in amortized O(1) time.
+	 * 
+	 * @return the character moved over
+	 * @throws NoSuchElementException
+	 *             if the cursor is at the start of the tree
+	 */
+	public char previous() throws NoSuchElementException {
+
+		if (this.position == 0) {
+			throw new NoSuchElementException();
+		}
+		this.checkPath();
+		this.position--;
+		if (this.depth == 0) {
+			// Coming back from the end, which has no path to walk back along
+			this.seek();
+			return this.path[this.depth - 1].element;
+		}
+		Node node = this.path[this.depth - 1];
+		if (node.left != NULL_NODE) {
+			// The predecessor is the rightmost node of the left subtree
+			node = node.left;
+			this.path[this.depth++] = node;
+			while (node.right != NULL_NODE) {
+				node = node.right;
+				this.path[this.depth++] = node;
+			}
+		} else {
+			// Otherwise it is the nearest ancestor we came to from its right
+			Node child;
+			do {
+				child = this.path[--this.depth];
+			} while (this.path[this.depth - 1].left == child);
+		}
+		return this.path[this.depth - 1].element;
+	}
+
+	/**
+	 * Inserts ch at the cursor, which ends up after it, the way typing does.
+	 * Takes O(log N) time.
+	 * 
+	 * @param ch
+	 */
+	public void insertHere(char ch) {
+
+		this.tree.add(ch, this.position);
+		this.position++;
+	}
+
+	/**
+	 * Deletes the character after the cursor, the way the Delete key does.
+	 * Takes O(log N) time.
+	 * 
+	 * @return the character deleted
+	 * @throws NoSuchElementException
+	 *             if the cursor is at the end of the tree
+	 */
+	public char deleteHere() throws NoSuchElementException {
+
+		if (!this.hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return this.tree.delete(this.position);
+	}
+
+	// Finds the path again if the tree has changed since it was found.
+	private void checkPath() {
+
+		if (this.expectedModCount != this.tree.container.modCount) {
+			if (this.position > this.tree.size()) {
+				// Someone else deleted characters out from under us
+				this.position = this.tree.size();
+			}
+			this.seek();
+		}
+	}
+
+	// Finds the path from the root to the node at position.
+	private void seek() {
+
+		Node node = this.tree.getRoot();
+		this.path = new Node[node.height + 1];
+		this.depth = 0;
+		this.expectedModCount = this.tree.container.modCount;
+		if (this.position == node.size) {
+			return;
+		}
+		int pos = this.position;
+		while (true) {
+			this.path[this.depth++] = node;
+			if (pos == node.rank) {
+				return;
+			} else if (pos < node.rank) {
+				node = node.left;
+			} else {
+				pos -= node.rank + 1;
+				node = node.right;
+			}
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package editortrees;
+
+import static editortrees.EditTreeTestSupport.ALPHABET;
+import static editortrees.EditTreeTestSupport.makeString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.Cursor}.
+ */
+public class CursorTest {
+
+	@Test
+	public void testWalkForwardAndBack() {
+		for (int n = 0; n < 70; n++) {
+			String s = makeString(n);
+			EditTree t = new EditTree(s);
+			Cursor c = t.cursor(0);
+			StringBuilder forward = new StringBuilder();
+			while (c.hasNext()) {
+				forward.append(c.next());
+			}
+			assertEquals(s, forward.toString());
+			assertEquals(n, c.position());
+			StringBuilder backward = new StringBuilder();
+			while (c.hasPrevious()) {
+				backward.append(c.previous());
+			}
+			assertEquals(new StringBuilder(s).reverse().toString(), backward.toString());
+			assertEquals(0, c.position());
+		}
+	}
+
+	@Test
+	public void testWalkTreeBuiltByAdds() {
+		// Trees built one character at a time have every kind of shape
+		Random random = new Random(18);
+		EditTree t = new EditTree();
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			int pos = random.nextInt(s.length() + 1);
+			char ch = ALPHABET.charAt(random.nextInt(26));
+			t.add(ch, pos);
+			s.insert(pos, ch);
+		}
+		Cursor c = t.cursor(250);
+		for (int i = 250; i < 500; i++) {
+			assertEquals(s.charAt(i), c.next());
+		}
+		for (int i = 499; i >= 100; i--) {
+			assertEquals(s.charAt(i), c.previous());
+		}
+		for (int i = 100; i < 300; i++) {
+			assertEquals(s.charAt(i), c.peek());
+			assertEquals(s.charAt(i), c.next());
+		}
+	}
+
+	@Test
+	public void testEnds() {
+		EditTree t = new EditTree("ab");
+		Cursor c = t.cursor(2);
+		assertFalse(c.hasNext());
+		try {
+			c.next();
+			fail("Did not throw NoSuchElementException");
+		} catch (NoSuchElementException e) {
+			// expected
+		}
+		c.moveTo(0);
+		assertFalse(c.hasPrevious());
+		try {
+			c.previous();
+			fail("Did not throw NoSuchElementException");
+		} catch (NoSuchElementException e) {
+			// expected
+		}
+		try {
+			t.cursor(3);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		Cursor empty = new EditTree().cursor(0);
+		assertFalse(empty.hasNext());
+		assertFalse(empty.hasPrevious());
+	}
+
+	@Test
+	public void testTyping() {
+		EditTree t = new EditTree("held");
+		Cursor c = t.cursor(3);
+		c.insertHere('l');
+		c.insertHere('o');
+		assertEquals(5, c.position());
+		assertEquals('d', c.deleteHere());
+		assertFalse(c.hasNext());
+		c.insertHere('!');
+		assertEquals("hello!", t.toString());
+		c.moveTo(0);
+		assertEquals('h', c.next());
+		assertEquals('e', c.deleteHere());
+		assertEquals('l', c.next());
+		assertEquals('l', c.previous());
+		assertEquals('h', c.previous());
+		assertEquals("hllo!", t.toString());
+	}
+
+	@Test
+	public void testEditsFromElsewhere() {
+		EditTree t = new EditTree(makeString(100));
+		Cursor c = t.cursor(50);
+		assertEquals(makeString(100).charAt(50), c.next());
+		t.delete(0, 10);
+		// The cursor keeps its position; its path is found again
+		assertEquals(51, c.position());
+		assertEquals(t.get(51), c.next());
+		t.insert(0, "0123456789");
+		assertEquals(t.get(52), c.peek());
+		t.delete(0, 80);
+		assertTrue(c.position() > t.size());
+		assertEquals(t.get(t.size() - 1), c.previous());
+		assertEquals(t.size() - 1, c.position());
+	}
+}
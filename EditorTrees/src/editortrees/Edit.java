@@ -0,0 +1,87 @@
+package editortrees;
+
+import java.util.Comparator;
+
+// One change for EditTree.applyBatch(): delete deleteLength characters
+// starting at position and put text in their place. Positions refer to the
+// document as it was before any edit in the batch, so a formatter can
+// produce its edits without adjusting for the ones before them.
+public final class Edit {
+
+	// Orders edits by position, with pure inserts before any deletion that
+	// starts at the same position.
+	static final Comparator<Edit> BY_POSITION = new Comparator<Edit>() {
+		@Override
+		public int compare(Edit a, Edit b) {
+			if (a.position != b.position) {
+				return a.position < b.position ? -1 : 1;
+			}
+			return (a.deleteLength == 0 ? 0 : 1) - (b.deleteLength == 0 ? 0 : 1);
+		}
+	};
+
+	private final int position;
+	private final int deleteLength;
+	private final String text;
+
+	/**
+	 * @param position
+	 *            where the edit starts
+	 * @param deleteLength
+	 *            number of characters removed from position on
+	 * @param text
+	 *            characters that take their place
+	 * @throws IllegalArgumentException
+	 *             if deleteLength is negative
+	 */
+	public Edit(int position, int deleteLength, CharSequence text) {
+
+		if (deleteLength < 0) {
+			throw new IllegalArgumentException("Negative delete length");
+		}
+		this.position = position;
+		this.deleteLength = deleteLength;
+		this.text = text.toString();
+	}
+
+	/**
+	 * @param position
+	 * @param text
+	 * @return an edit that inserts text at position
+	 */
+	public static Edit insert(int position, CharSequence text) {
+
+		return new Edit(position, 0, text);
+	}
+
+	/**
+	 * @param position
+	 * @param length
+	 * @return an edit that deletes length characters starting at position
+	 */
+	public static Edit delete(int position, int length) {
+
+		return new Edit(position, length, "");
+	}
+
+	public int getPosition() {
+
+		return this.position;
+	}
+
+	public int getDeleteLength() {
+
+		return this.deleteLength;
+	}
+
+	public String getText() {
+
+		return this.text;
+	}
+
+	@Override
+	public String toString() {
+
+		return "[" + this.position + "+" + this.deleteLength + " -> \"" + this.text + "\"]";
+	}
+}
@@ -2,25 +2,38 @@ package editortrees;
 
 import static editortrees.Node.NULL_NODE;
 
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 // A height-balanced binary tree with rank that could be the basis for a text editor.
 public class EditTree {
 
 	private Node root;
 	public Container container = new Container();
+	// Summaries whose subtree values this tree keeps; see register()
+	private final List<Summary<?>> summaries = new ArrayList<Summary<?>>();
 
 	public class Container {
 
 		int maxIndex;
-		int size;
 		int rotationCount;
 		char charRemoved;
+		Node splitRoot;
+		// Bumped by every edit, so a Cursor can tell its path is stale
+		int modCount;
 
 		public Container() {
 
 			maxIndex = 0;
-			size = 0;
 			rotationCount = 0;
 		}
 	}
@@ -31,7 +44,6 @@ public class EditTree {
 	public EditTree() {
 
 		root = NULL_NODE;
-		container.size = 0;
 	}
 
 	/**
@@ -42,7 +54,6 @@ public class EditTree {
 	public EditTree(char ch) {
 
 		root = new Node(ch);
-		this.container.size++;
 	}
 
 	/**
@@ -53,9 +64,34 @@ public class EditTree {
 	 */
 	public EditTree(EditTree e) {
 
-		Node newRoot = new Node(e.root.element);
-		this.root = newRoot.createTreeCopy(e.root, e, container);
+		this.root = Node.copyTree(e.root);
+		this.summaries.addAll(e.summaries);
+	}
+
+	/**
+	 * Make this tree have the same contents as e. With copyOnWrite set this
+	 * takes O(1) time: both trees share e's nodes, and whichever tree edits
+	 * first copies just the nodes on the path it changes. Otherwise this is
+	 * the same as EditTree(e).
+	 * 
+	 * @param e
+	 * @param copyOnWrite
+	 */
+	public EditTree(EditTree e, boolean copyOnWrite) {
+
+		this.root = copyOnWrite ? e.root.share() : Node.copyTree(e.root);
+		this.summaries.addAll(e.summaries);
+	}
+
+	/**
+	 * Wraps an existing root. The nodes are not copied, so unless they are
+	 * marked shared they must not be reachable from anywhere else.
+	 * 
+	 * @param root
+	 */
+	EditTree(Node root) {
 
+		this.root = root;
 	}
 
 	/**
@@ -64,16 +100,115 @@ public class EditTree {
 	 * insert() would be O(N log N), so you need to find a more efficient way to
 	 * do this.
 	 * 
+	 * Strings of at least Node.PARALLEL_BUILD_THRESHOLD characters are built
+	 * in parallel on the common fork/join pool.
+	 * 
 	 * @param s
 	 */
 	public EditTree(String s) {
 
-		if (s.length() == 0) {
-			this.root = NULL_NODE;
+		this.root = Node.buildParallel(null, s, 0, s.length(), ForkJoinPool.commonPool());
+
+	}
+
+	/**
+	 * Creates an EditTree holding len characters of src starting at off. The
+	 * tree is built directly from the array in O(len) time, without any
+	 * rotations or intermediate Strings.
+	 * 
+	 * @param src
+	 * @param off
+	 * @param len
+	 * @return the new tree
+	 * @throws IndexOutOfBoundsException
+	 *             unless off and len describe a range inside src
+	 */
+	public static EditTree of(char[] src, int off, int len) throws IndexOutOfBoundsException {
+
+		if (off < 0 || len < 0 || off + len > src.length) {
+			throw new IndexOutOfBoundsException("Out of bounds");
 		}
-		this.root = new Node();
-		this.root = this.root.EditTree(s);
+		return of(src, off, len, ForkJoinPool.commonPool());
+	}
 
+	/**
+	 * Same as of(char[], int, int), but large arrays are built in parallel on
+	 * the given pool.
+	 * 
+	 * @param src
+	 * @param off
+	 * @param len
+	 * @param pool
+	 *            runs the build once it reaches Node.PARALLEL_BUILD_THRESHOLD
+	 *            characters
+	 * @return the new tree
+	 * @throws IndexOutOfBoundsException
+	 *             unless off and len describe a range inside src
+	 */
+	public static EditTree of(char[] src, int off, int len, ForkJoinPool pool) throws IndexOutOfBoundsException {
+
+		if (off < 0 || len < 0 || off + len > src.length) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		EditTree tree = new EditTree();
+		tree.root = Node.buildParallel(src, null, off, off + len, pool);
+		return tree;
+	}
+
+	/**
+	 * Creates an EditTree whose toString is chars, in O(N) time.
+	 * 
+	 * @param chars
+	 * @return the new tree
+	 */
+	public static EditTree of(CharSequence chars) {
+
+		return of(chars, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Same as of(CharSequence), but large sequences are built in parallel on
+	 * the given pool. chars must not change while the tree is being built.
+	 * 
+	 * @param chars
+	 * @param pool
+	 *            runs the build once it reaches Node.PARALLEL_BUILD_THRESHOLD
+	 *            characters
+	 * @return the new tree
+	 */
+	public static EditTree of(CharSequence chars, ForkJoinPool pool) {
+
+		EditTree tree = new EditTree();
+		tree.root = Node.buildParallel(null, chars, 0, chars.length(), pool);
+		return tree;
+	}
+
+	/**
+	 * Creates an EditTree holding the remaining characters of buffer, in O(N)
+	 * time. The buffer's position is not changed.
+	 * 
+	 * @param buffer
+	 * @return the new tree
+	 */
+	public static EditTree of(CharBuffer buffer) {
+
+		// Array-backed buffers can skip the per-character buffer checks
+		if (buffer.hasArray()) {
+			return of(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		}
+		return of((CharSequence) buffer);
+	}
+
+	/**
+	 * Takes an immutable snapshot of this tree in O(1) time. This tree and
+	 * the snapshot share all of their nodes; later edits to this tree copy
+	 * the nodes on the path they change instead of changing them in place.
+	 * 
+	 * @return the current contents of this tree as a PersistentEditTree
+	 */
+	public PersistentEditTree snapshot() {
+
+		return new PersistentEditTree(this.root.share());
 	}
 
 	/**
@@ -97,14 +232,51 @@ public class EditTree {
 		if (root == NULL_NODE) {
 			return "";
 		}
-		ArrayList<Character> list = new ArrayList<Character>();
-		root.inOrder(list);
-		String formattedString = list.toString().replace("[", "") // remove the
-																	// right
-																	// bracket
-				.replace("]", "")// remove the left bracket
-				.replace(", ", "").trim();
-		return formattedString; // replace by a real calculation.
+		// The size is known up front, so fill one array and copy it once
+		return new String(root.inOrder(new char[root.size]));
+	}
+
+	/**
+	 * Hands every character of this tree to action, in order, without
+	 * building a String or boxing the characters.
+	 * 
+	 * @param action
+	 *            receives each character
+	 */
+	public void forEach(CharConsumer action) {
+
+		root.forEach(action);
+	}
+
+	/**
+	 * @return an iterator over the characters of this tree, in order, that
+	 *         does not box them. The tree must not be edited while it is in
+	 *         use.
+	 */
+	public PrimitiveIterator.OfInt charIterator() {
+
+		return Spliterators.iterator(this.spliterator());
+	}
+
+	/**
+	 * @return a spliterator over the characters of this tree that splits at
+	 *         subtree boundaries, so parallel streams divide the tree between
+	 *         them without copying it. The tree must not be edited while it
+	 *         is in use.
+	 */
+	public Spliterator.OfInt spliterator() {
+
+		return new CharSpliterator(this.root, 0, this.root.size);
+	}
+
+	/**
+	 * @return a stream of the characters of this tree, like
+	 *         CharSequence.chars(). Call parallel() on it to scan a large
+	 *         tree on every core.
+	 */
+	public IntStream chars() {
+
+		return StreamSupport.intStream(this.spliterator(), false);
 	}
 
 	/**
@@ -152,7 +324,7 @@ public class EditTree {
 		} else {
 			this.root = this.root.add(ch, container);
 		}
-
+		this.container.modCount++;
 	}
 
 	/**
@@ -172,13 +344,40 @@ public class EditTree {
 				throw new IndexOutOfBoundsException("Need to add adjacent to other elements");
 			}
 			this.root = new Node(ch);
-			this.container.size++;
 		} else if (position < 0) {
 			throw new IndexOutOfBoundsException("Need an index greater than or equal to 0");
 		} else {
 			this.root = this.root.add(ch, position, this.container);
-			this.container.size++;
 		}
+		this.container.modCount++;
+	}
+
+	/**
+	 * Inserts all of s so that its first character ends up at position pos.
+	 * The new characters are built into a balanced tree in O(k) time and
+	 * spliced in with one split and two concatenations, so the whole insert
+	 * is O(log N + k) rather than k separate calls to add().
+	 * 
+	 * @param pos
+	 *            position the first character of s is inserted at
+	 * @param s
+	 *            characters to insert
+	 * @throws IndexOutOfBoundsException
+	 *             if pos is negative or greater than the size of this tree
+	 */
+	public void insert(int pos, CharSequence s) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos > this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		if (s.length() == 0) {
+			return;
+		}
+		EditTree middle = new EditTree();
+		middle.root = Node.build(s, 0, s.length());
+		EditTree rest = this.split(pos);
+		this.concatenate(middle);
+		this.concatenate(rest);
 	}
 
 	/**
@@ -240,13 +439,13 @@ public class EditTree {
 		}
 		this.root = this.root.delete(position, this.container);
 		// Passed container stores the char of the node being deleted
-		container.size--;
+		this.container.modCount++;
 		return this.container.charRemoved; // replace by a real calculation.
 	}
 
 	/**
-	 * MILESTONE 3, EASY This method operates in O(length*log N), where N is the
-	 * size of this tree.
+	 * MILESTONE 3, EASY This method operates in O(log N + length), where N is
+	 * the size of this tree.
 	 * 
 	 * @param pos
 	 *            location of the beginning of the string to retrieve
@@ -259,14 +458,13 @@ public class EditTree {
 	 */
 	public String get(int position, int length) throws IndexOutOfBoundsException {
 
-		if (position < 0 || position + length > this.size()) {
+		if (position < 0 || length < 0 || position + length > this.size()) {
 			throw new IndexOutOfBoundsException("Out of bounds");
 		}
-		StringBuilder string = new StringBuilder();
-		for (int i = 0; i < length; i++) {
-			string.append(this.root.get(position + i));
-		}
-		return string.toString();
+		// One walk over the range instead of a root-to-leaf get() per char
+		char[] chars = new char[length];
+		this.root.copyRange(position, position + length, chars, 0);
+		return new String(chars);
 	}
 
 	/**
@@ -290,22 +488,23 @@ public class EditTree {
 		} else if (this.size() == 0) {
 			this.root = rightTree.root;
 			rightTree.root = NULL_NODE;
+			this.container.modCount++;
+			rightTree.container.modCount++;
 			return;
 		} else {
-			// Case of left tree smaller than right tree
+			// Borrow the connecting node from the shorter tree so that the
+			// taller one keeps its shape until join() reaches the right level
+			Node connectingNode;
 			if (this.height() < rightTree.height()) {
-				Node connectingNode = new Node(this.delete(this.size() - 1));
-				this.root = this.root.concatenate(this, rightTree, connectingNode, null, rightTree.root,
-						rightTree.height(), this.container);
-			}
-			// Case of left tree bigger than or equal to right tree
-			else {
-				Node connectingNode = new Node(rightTree.delete(0));
-				this.root = this.root.concatenate(this, rightTree, connectingNode, null, this.root, this.height(),
-						this.container);
+				connectingNode = new Node(this.delete(this.size() - 1));
+			} else {
+				connectingNode = new Node(rightTree.delete(0));
 			}
+			this.root = Node.join(this.root, connectingNode, rightTree.root, this.container);
+			this.container.modCount++;
 		}
 		rightTree.root = NULL_NODE;
+		rightTree.container.modCount++;
 	}
 
 	/**
@@ -321,7 +520,17 @@ public class EditTree {
 	 */
 	public EditTree split(int pos) throws IndexOutOfBoundsException {
 
-		return null; // replace by a real calculation.
+		if (pos < 0 || pos > this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		EditTree rightTree = new EditTree();
+		this.root = this.root.split(pos, this.container);
+		// Node.split() hands back the right half through the container
+		rightTree.root = this.container.splitRoot;
+		this.container.splitRoot = null;
+		rightTree.summaries.addAll(this.summaries);
+		this.container.modCount++;
+		return rightTree;
 	}
 
 	/**
@@ -342,36 +551,464 @@ public class EditTree {
 	 */
 	public EditTree delete(int start, int length) throws IndexOutOfBoundsException {
 
+		if (start < 0 || length < 0 || start + length > this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		// Cut out [start, start + length) and stitch the two outer pieces
+		// back together; the middle piece is handed back untouched.
+		EditTree removed = this.split(start);
+		EditTree rest = removed.split(length);
+		this.concatenate(rest);
+		return removed;
+	}
+
+	/**
+	 * Applies a batch of edits whose positions all refer to this tree as it
+	 * is now. The edits are sorted by position and the tree is rebuilt left
+	 * to right: each untouched range is split off once and joined onto the
+	 * result, followed by the edit's new text. That is O(k log N) for k
+	 * edits, with no repeated descents from the root for each character.
+	 * Rotations show up in totalRotationCount() as usual. Nothing is changed
+	 * if any edit is out of bounds or overlaps another.
+	 * 
+	 * @param edits
+	 * @throws IndexOutOfBoundsException
+	 *             if an edit starts or ends outside this tree
+	 * @throws IllegalArgumentException
+	 *             if two edits delete overlapping ranges, or one inserts
+	 *             inside a range another deletes
+	 */
+	public void applyBatch(List<Edit> edits) throws IndexOutOfBoundsException, IllegalArgumentException {
+
+		Edit[] sorted = edits.toArray(new Edit[edits.size()]);
+		// A stable sort, so inserts at the same position keep their order
+		Arrays.sort(sorted, Edit.BY_POSITION);
+		int end = 0;
+		for (Edit edit : sorted) {
+			if (edit.getPosition() < 0 || edit.getPosition() + edit.getDeleteLength() > this.size()) {
+				throw new IndexOutOfBoundsException("Out of bounds");
+			}
+			if (edit.getPosition() < end) {
+				throw new IllegalArgumentException("Overlapping edits " + edit);
+			}
+			end = edit.getPosition() + edit.getDeleteLength();
+		}
+		Node result = NULL_NODE;
+		Node rest = this.root;
+		// Position in the original tree that rest starts at
+		int consumed = 0;
+		for (Edit edit : sorted) {
+			Node untouched = rest.split(edit.getPosition() - consumed, this.container);
+			// Drop the deleted characters
+			this.container.splitRoot.split(edit.getDeleteLength(), this.container);
+			rest = this.container.splitRoot;
+			result = this.join(result, untouched);
+			String text = edit.getText();
+			result = this.join(result, Node.build(text, 0, text.length()));
+			consumed = edit.getPosition() + edit.getDeleteLength();
+		}
+		this.root = this.join(result, rest);
+		this.container.splitRoot = null;
+		this.container.modCount++;
+	}
+
+	// Concatenates two trees of nodes, counting rotations in this tree's
+	// container. The first node of right becomes the connecting node.
+	private Node join(Node left, Node right) {
+
+		if (right == NULL_NODE) {
+			return left;
+		} else if (left == NULL_NODE) {
+			return right;
+		}
+		Node first = right.split(1, this.container);
+		return Node.join(left, first, this.container.splitRoot, this.container);
+	}
+
+	/**
+	 * Finds the node at a position. Any shared node on the way down is
+	 * replaced by a copy this tree owns, so the node and everything above it
+	 * have parent links that lead to this tree's root. The links stay right
+	 * through later edits until the tree is shared again with snapshot() or
+	 * the copy-on-write constructor; look nodes up again after that.
+	 * 
+	 * @param position
+	 *            position in the tree
+	 * @return the node holding the character at that position, for use with
+	 *         positionOf(), successorOf() and predecessorOf()
+	 * @throws IndexOutOfBoundsException
+	 */
+	public Node nodeAt(int position) throws IndexOutOfBoundsException {
+
+		if (position < 0 || position >= this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		this.root = this.root.mutable();
+		Node node = this.root;
+		while (position != node.rank) {
+			if (position < node.rank) {
+				node = this.ownLeft(node);
+			} else {
+				position -= node.rank + 1;
+				node = this.ownRight(node);
+			}
+		}
+		return node;
+	}
+
+	// The left child of a node this tree owns, copied first if it is shared
+	// and linked back to its parent.
+	private Node ownLeft(Node parent) {
+
+		Node child = parent.left.mutable();
+		parent.left = child;
+		child.parent = parent;
+		return child;
+	}
+
+	// The right child of a node this tree owns, like ownLeft().
+	private Node ownRight(Node parent) {
+
+		Node child = parent.right.mutable();
+		parent.right = child;
+		child.parent = parent;
+		return child;
+	}
+
+	/**
+	 * Finds where a node is by climbing its parent links to the root, adding
+	 * up the ranks of the ancestors it is right of. Takes O(log N) time.
+	 * 
+	 * @param node
+	 * @return the position of node's character in this tree
+	 * @throws IllegalStateException
+	 *             if node is no longer in this tree
+	 */
+	public int positionOf(Node node) throws IllegalStateException {
+
+		int position = node.rank;
+		for (Node child = node; child != this.root; child = child.parent) {
+			Node parent = this.checkedParent(child);
+			if (parent.right == child) {
+				position += parent.rank + 1;
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * Finds the node after the given one using parent links instead of a
+	 * stack, in amortized O(1) time over a walk through the tree. Like
+	 * nodeAt(), it copies any shared node it walks down to, so the result
+	 * can be passed back in.
+	 * 
+	 * @param node
+	 * @return the node holding the next character, or null if node holds the
+	 *         last one
+	 * @throws IllegalStateException
+	 *             if node is no longer in this tree
+	 */
+	public Node successorOf(Node node) throws IllegalStateException {
+
+		if (node.right != NULL_NODE) {
+			Node next = this.ownRight(node);
+			while (next.left != NULL_NODE) {
+				next = this.ownLeft(next);
+			}
+			return next;
+		}
+		// Climb until we come up out of a left subtree
+		while (node != this.root) {
+			Node parent = this.checkedParent(node);
+			if (parent.left == node) {
+				return parent;
+			}
+			node = parent;
+		}
 		return null;
 	}
 
 	/**
-	 * MILESTONE 3 Don't worry if you can't do this one efficiently.
+	 * Finds the node before the given one using parent links, copying
+	 * shared nodes on the way down like successorOf().
 	 * 
+	 * @param node
+	 * @return the node holding the previous character, or null if node holds
+	 *         the first one
+	 * @throws IllegalStateException
+	 *             if node is no longer in this tree
+	 */
+	public Node predecessorOf(Node node) throws IllegalStateException {
+
+		if (node.left != NULL_NODE) {
+			Node previous = this.ownLeft(node);
+			while (previous.right != NULL_NODE) {
+				previous = this.ownRight(previous);
+			}
+			return previous;
+		}
+		// Climb until we come up out of a right subtree
+		while (node != this.root) {
+			Node parent = this.checkedParent(node);
+			if (parent.right == node) {
+				return parent;
+			}
+			node = parent;
+		}
+		return null;
+	}
+
+	// The parent of a node on the way up to this tree's root. A node that has
+	// been deleted eventually leads somewhere that is not its parent here.
+	private Node checkedParent(Node child) {
+
+		Node parent = child.parent;
+		if (parent == null || (parent.left != child && parent.right != child)) {
+			throw new IllegalStateException("Node is not in this tree");
+		}
+		return parent;
+	}
+
+	/**
+	 * Hashes a range without extracting it, in O(log N) time. Equal ranges,
+	 * in this tree or any other, always have equal hashes; different ones
+	 * collide with probability at most length / 2^61, because the base of
+	 * the hash is picked at random each time the JVM starts. Hashes from
+	 * different JVMs cannot be compared, so do not store them.
+	 * 
+	 * @param start
+	 *            position of the first character to hash
+	 * @param length
+	 *            number of characters to hash
+	 * @return the polynomial hash of the range, the same as
+	 *         EditTree.hashOf() of its characters
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for this
+	 *             tree.
+	 */
+	public long hash(int start, int length) throws IndexOutOfBoundsException {
+
+		if (start < 0 || length < 0 || start + length > this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		long[] acc = new long[1];
+		this.root.hashRange(start, start + length, acc);
+		return acc[0];
+	}
+
+	/**
 	 * @param s
-	 *            the string to look for
-	 * @return the position in this tree of the first occurrence of s; -1 if s
-	 *         does not occur
+	 * @return the hash that a range holding exactly the characters of s has
 	 */
-	public int find(String s) {
+	public static long hashOf(CharSequence s) {
 
-		if (this.root == NULL_NODE) {
-			return -1;
-		} else if (s.length() == 0) {
+		return Node.hashOf(s);
+	}
+
+	/**
+	 * Compares two ranges of this tree by hash in O(log N) time. A false
+	 * result is always right; a true one is wrong only if the hashes
+	 * collide, with the probability hash() gives.
+	 * 
+	 * @param start1
+	 * @param start2
+	 * @param length
+	 * @return whether the length characters starting at start1 and at start2
+	 *         are the same
+	 * @throws IndexOutOfBoundsException
+	 *             if either range is not entirely in this tree
+	 */
+	public boolean rangeEquals(int start1, int start2, int length) throws IndexOutOfBoundsException {
+
+		return this.hash(start1, length) == this.hash(start2, length);
+	}
+
+	/**
+	 * @return the number of lines in this tree: one more than the number of
+	 *         '\n' characters, so an empty tree has one line.
+	 */
+	public int lineCount() {
+
+		return this.root.newlines + 1;
+	}
+
+	/**
+	 * Finds which line an offset is on in O(log N) time.
+	 * 
+	 * @param offset
+	 *            a position from 0 to size(); a newline belongs to the line
+	 *            it ends
+	 * @return the number of the line, counting from 0
+	 * @throws IndexOutOfBoundsException
+	 *             if offset is negative or greater than size()
+	 */
+	public int lineOfOffset(int offset) throws IndexOutOfBoundsException {
+
+		if (offset < 0 || offset > this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		return this.root.newlinesBefore(offset);
+	}
+
+	/**
+	 * Finds where a line starts in O(log N) time.
+	 * 
+	 * @param line
+	 *            the number of the line, counting from 0
+	 * @return the offset of the first character of line; for a last line
+	 *         that is empty, size()
+	 * @throws IndexOutOfBoundsException
+	 *             if line is negative or not less than lineCount()
+	 */
+	public int offsetOfLine(int line) throws IndexOutOfBoundsException {
+
+		if (line < 0 || line >= this.lineCount()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		} else if (line == 0) {
 			return 0;
 		}
-		String string = this.toString();
-		for (int i = 0; i <= string.length() - s.length(); i++) {
-			if (string.substring(i, s.length() + i).equals(s)) {
-				return i;
+		// Line n starts just after the newline that ends line n - 1
+		return this.root.positionOfNewline(line - 1) + 1;
+	}
+
+	/**
+	 * Registers summary with this tree so that summarize() and seek() accept
+	 * it. This computes its value for every subtree, which takes O(N) time
+	 * and keeps one value per node for as long as the node lives; values are
+	 * never evicted, however many summaries are registered. Registering the
+	 * same instance again does nothing. Copies of this tree and trees split
+	 * off it start with the same summaries registered.
+	 * 
+	 * @param summary
+	 */
+	public void register(Summary<?> summary) {
+
+		if (!this.isRegistered(summary)) {
+			this.summaries.add(summary);
+		}
+		this.root.summarize(summary);
+	}
+
+	/**
+	 * Computes summary over a range. Takes O(log N) time, plus O(1) for each
+	 * character added since summary was last asked about: an edit drops the
+	 * values of the O(log N) subtrees it changes and new characters have no
+	 * values yet, so the first query after it computes those again.
+	 * 
+	 * @param summary
+	 *            a summary registered with this tree
+	 * @param start
+	 *            position of the first character to summarize
+	 * @param length
+	 *            number of characters to summarize
+	 * @return the value of summary for the range
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for this
+	 *             tree.
+	 * @throws IllegalArgumentException
+	 *             if summary is not registered with this tree
+	 */
+	public <S> S summarize(Summary<S> summary, int start, int length)
+			throws IndexOutOfBoundsException, IllegalArgumentException {
+
+		if (start < 0 || length < 0 || start + length > this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		this.checkRegistered(summary);
+		return this.root.summarize(summary, start, start + length);
+	}
+
+	/**
+	 * Computes summary over the whole tree, at the same cost as
+	 * summarize(summary, 0, size()).
+	 * 
+	 * @param summary
+	 *            a summary registered with this tree
+	 * @return the value of summary for the whole tree
+	 * @throws IllegalArgumentException
+	 *             if summary is not registered with this tree
+	 */
+	public <S> S summarize(Summary<S> summary) throws IllegalArgumentException {
+
+		this.checkRegistered(summary);
+		return this.root.summarize(summary);
+	}
+
+	/**
+	 * Finds the first position whose prefix summary satisfies predicate,
+	 * such as the offset of the tenth newline or the first character past a
+	 * given display width. The predicate must be monotone: once it holds
+	 * for the summary of positions 0 through p, it holds for every later p
+	 * too. Costs the same as summarize(): O(log N), plus O(1) for each
+	 * character added since summary was last asked about.
+	 * 
+	 * @param summary
+	 *            a summary registered with this tree
+	 * @param predicate
+	 * @return the first position p for which predicate holds for the summary
+	 *         of positions 0 through p; -1 if there is none
+	 * @throws IllegalArgumentException
+	 *             if summary is not registered with this tree
+	 */
+	public <S> int seek(Summary<S> summary, Predicate<? super S> predicate) throws IllegalArgumentException {
+
+		this.checkRegistered(summary);
+		return this.root.seek(summary, predicate);
+	}
+
+	private boolean isRegistered(Summary<?> summary) {
+
+		// By identity: the cached values are keyed on the instance
+		for (Summary<?> registered : this.summaries) {
+			if (registered == summary) {
+				return true;
 			}
 		}
-		return -1;
+		return false;
+	}
+
+	private void checkRegistered(Summary<?> summary) {
+
+		if (!this.isRegistered(summary)) {
+			throw new IllegalArgumentException("Summary is not registered with this tree");
+		}
+	}
+
+	/**
+	 * @param position
+	 *            where the cursor starts, from 0 to size()
+	 * @return a cursor for walking and editing this tree one position at a
+	 *         time
+	 * @throws IndexOutOfBoundsException
+	 *             if position is negative or greater than size()
+	 */
+	public Cursor cursor(int position) throws IndexOutOfBoundsException {
+
+		if (position < 0 || position > this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		return new Cursor(this, position);
+	}
 
+	/**
+	 * MILESTONE 3 Runs in O(N + M) time with O(M) extra space, where M is
+	 * the length of s.
+	 * 
+	 * @param s
+	 *            the string to look for
+	 * @return the position in this tree of the first occurrence of s; -1 if s
+	 *         does not occur
+	 */
+	public int find(String s) {
+
+		return this.find(s, 0);
 	}
 
 	/**
-	 * MILESTONE 3
+	 * MILESTONE 3 Knuth-Morris-Pratt over a single in-order walk starting at
+	 * pos, so the tree is never copied out and no character is looked at
+	 * twice. Like String.indexOf(), an empty s is found at pos and a negative
+	 * pos is treated as 0.
 	 * 
 	 * @param s
 	 *            the string to search for
@@ -382,23 +1019,7 @@ public class EditTree {
 	 */
 	public int find(String s, int pos) {
 
-		ArrayList<Character> list = new ArrayList<Character>();
-		this.root.inOrder(list);
-
-		int startIndex = 0;
-		int stringIndex = 0;
-		for (int i = pos; i < list.size(); i++) {
-			if (list.get(i) == s.charAt(stringIndex)) {
-				if (stringIndex == 0) {
-					startIndex = i;
-				}
-				stringIndex++;
-				if (stringIndex + 1 >= s.length()) {
-					return startIndex;
-				}
-			}
-		}
-		return -1;
+		return this.root.find(s, pos);
 	}
 
 	/**
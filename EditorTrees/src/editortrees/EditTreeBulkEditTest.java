@@ -0,0 +1,508 @@
+package editortrees;
+
+import static editortrees.EditTreeTestSupport.ALPHABET;
+import static editortrees.EditTreeTestSupport.makeString;
+import static editortrees.EditTreeTestSupport.maxHeight;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+import org.junit.Test;
+
+/**
+ * Tests for the operations that edit or read a whole range of positions at
+ * once, rather than one character at a time.
+ */
+public class EditTreeBulkEditTest {
+
+	private EditTree makeTree(String s) {
+		EditTree t = new EditTree();
+		for (int i = 0; i < s.length(); i++) {
+			t.add(s.charAt(i));
+		}
+		return t;
+	}
+
+	private void assertBalanced(EditTree t) {
+		assertTrue(t.height() <= maxHeight(t.size()));
+	}
+
+	@Test
+	public void testDeleteRange() {
+		EditTree t = makeTree(ALPHABET);
+		EditTree removed = t.delete(3, 5);
+		assertEquals("defgh", removed.toString());
+		assertEquals("abcijklmnopqrstuvwxyz", t.toString());
+		assertEquals(21, t.size());
+		assertEquals(5, removed.size());
+		assertBalanced(t);
+		assertBalanced(removed);
+
+		// The cut piece is a usable tree on its own
+		removed.add('!');
+		assertEquals("defgh!", removed.toString());
+		t.add('!', 3);
+		assertEquals("abc!ijklmnopqrstuvwxyz", t.toString());
+	}
+
+	@Test
+	public void testDeleteRangeEnds() {
+		EditTree t = makeTree(ALPHABET);
+		assertEquals("abc", t.delete(0, 3).toString());
+		assertEquals("xyz", t.delete(20, 3).toString());
+		assertEquals("", t.delete(5, 0).toString());
+		assertEquals("defghijklmnopqrstuvw", t.toString());
+		assertEquals("defghijklmnopqrstuvw", t.delete(0, t.size()).toString());
+		assertEquals("", t.toString());
+		assertEquals(-1, t.height());
+	}
+
+	@Test
+	public void testDeleteRangeInvalid() {
+		EditTree t = makeTree("abcde");
+		try {
+			t.delete(-1, 2);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			t.delete(3, 3);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		assertEquals("abcde", t.toString());
+	}
+
+	@Test
+	public void testDeleteRangeRandom() {
+		Random random = new Random(230);
+		StringBuilder expected = new StringBuilder();
+		EditTree t = new EditTree();
+		for (int i = 0; i < 2000; i++) {
+			char ch = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+			int pos = random.nextInt(i + 1);
+			t.add(ch, pos);
+			expected.insert(pos, ch);
+		}
+		while (t.size() > 0) {
+			int start = random.nextInt(t.size());
+			int length = random.nextInt(Math.min(50, t.size() - start) + 1);
+			EditTree removed = t.delete(start, length);
+			assertEquals(expected.substring(start, start + length), removed.toString());
+			expected.delete(start, start + length);
+			assertEquals(expected.toString(), t.toString());
+			assertBalanced(t);
+			assertBalanced(removed);
+		}
+	}
+
+	@Test
+	public void testConcatenateUnevenHeights() {
+		for (int leftSize = 0; leftSize < 40; leftSize++) {
+			for (int rightSize = 0; rightSize < 40; rightSize++) {
+				String left = makeString(leftSize, 'a');
+				String right = makeString(rightSize, 'A');
+				EditTree t1 = makeTree(left);
+				EditTree t2 = makeTree(right);
+				t1.concatenate(t2);
+				assertEquals(left + right, t1.toString());
+				assertEquals("", t2.toString());
+				assertBalanced(t1);
+			}
+		}
+	}
+
+	@Test
+	public void testInsert() {
+		EditTree t = new EditTree();
+		t.insert(0, "fghij");
+		assertEquals("fghij", t.toString());
+		t.insert(0, "abcde");
+		t.insert(10, new StringBuilder("klm"));
+		t.insert(5, "");
+		t.insert(3, "!");
+		assertEquals("abc!defghijklm", t.toString());
+		assertEquals(14, t.size());
+		assertBalanced(t);
+
+		// Ranks and balance codes must be right for later edits
+		t.delete(3);
+		t.add('n');
+		t.add('0', 0);
+		assertEquals("0abcdefghijklmn", t.toString());
+		assertBalanced(t);
+	}
+
+	@Test
+	public void testInsertInvalid() {
+		EditTree t = makeTree("abc");
+		try {
+			t.insert(4, "x");
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			t.insert(-1, "x");
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		assertEquals("abc", t.toString());
+	}
+
+	@Test
+	public void testInsertRandom() {
+		Random random = new Random(230);
+		StringBuilder expected = new StringBuilder();
+		EditTree t = new EditTree();
+		for (int i = 0; i < 500; i++) {
+			String s = makeString(random.nextInt(60), (char) ('a' + random.nextInt(26)));
+			int pos = random.nextInt(t.size() + 1);
+			t.insert(pos, s);
+			expected.insert(pos, s);
+			assertEquals(expected.length(), t.size());
+			assertBalanced(t);
+		}
+		assertEquals(expected.toString(), t.toString());
+	}
+
+	@Test
+	public void testGetRangeEveryWindow() {
+		String s = makeString(100, 'a');
+		EditTree t = makeTree(s);
+		for (int start = 0; start <= s.length(); start++) {
+			for (int end = start; end <= s.length(); end++) {
+				assertEquals(s.substring(start, end), t.get(start, end - start));
+			}
+		}
+		try {
+			t.get(5, -1);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testToStringKeepsEveryCharacter() {
+		String s = "[a, b] ,  x]\n\t[ ";
+		EditTree t = makeTree(s);
+		assertEquals(s, t.toString());
+		assertEquals(s, new EditTree(s).toString());
+	}
+
+	@Test
+	public void testForEach() {
+		String s = makeString(1000, 'a');
+		EditTree t = new EditTree(s);
+		final StringBuilder seen = new StringBuilder();
+		t.forEach(new CharConsumer() {
+			@Override
+			public void accept(char ch) {
+				seen.append(ch);
+			}
+		});
+		assertEquals(s, seen.toString());
+
+		seen.setLength(0);
+		new EditTree().forEach(new CharConsumer() {
+			@Override
+			public void accept(char ch) {
+				seen.append(ch);
+			}
+		});
+		assertEquals("", seen.toString());
+	}
+
+	@Test
+	public void testBuilders() {
+		for (int length = 0; length < 70; length++) {
+			String s = makeString(length, 'a');
+			EditTree expected = new EditTree(s);
+
+			char[] padded = ("<<" + s + ">>").toCharArray();
+			EditTree fromArray = EditTree.of(padded, 2, length);
+			EditTree fromSequence = EditTree.of(new StringBuilder(s));
+			CharBuffer heap = CharBuffer.wrap(padded);
+			heap.position(2);
+			heap.limit(2 + length);
+			EditTree fromHeapBuffer = EditTree.of(heap.slice());
+			CharBuffer direct = java.nio.ByteBuffer.allocateDirect(2 * length).asCharBuffer();
+			direct.put(s);
+			direct.flip();
+			EditTree fromDirectBuffer = EditTree.of(direct);
+
+			for (EditTree t : new EditTree[] { fromArray, fromSequence, fromHeapBuffer, fromDirectBuffer }) {
+				assertEquals(s, t.toString());
+				assertEquals(length, t.size());
+				assertEquals(expected.toDebugString(), t.toDebugString());
+				assertEquals(0, t.totalRotationCount());
+				assertBalanced(t);
+			}
+			assertEquals(0, direct.position());
+		}
+	}
+
+	@Test
+	public void testParallelBuild() {
+		String s = makeString(5 * Node.PARALLEL_BUILD_THRESHOLD + 17, 'a');
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			EditTree sequential = new EditTree();
+			sequential.insert(0, s);
+			EditTree parallel = EditTree.of(s.toCharArray(), 0, s.length(), pool);
+			EditTree fromSequence = EditTree.of(new StringBuilder(s), pool);
+			assertEquals(s, parallel.toString());
+			assertEquals(sequential.toDebugString(), parallel.toDebugString());
+			assertEquals(sequential.toDebugString(), fromSequence.toDebugString());
+			assertEquals(sequential.toDebugString(), new EditTree(s).toDebugString());
+			assertBalanced(parallel);
+
+			parallel.add('!', 12345);
+			parallel.delete(0, 100);
+			assertEquals(s.substring(100, 12345) + "!" + s.substring(12345), parallel.toString());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testBuildFromArrayInvalid() {
+		char[] chars = "abc".toCharArray();
+		try {
+			EditTree.of(chars, 2, 2);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			EditTree.of(chars, -1, 1);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testApplyBatch() {
+		EditTree t = makeTree("the quick brown fox");
+		List<Edit> edits = new ArrayList<Edit>();
+		edits.add(new Edit(16, 3, "cat"));
+		edits.add(Edit.insert(0, ">> "));
+		edits.add(new Edit(4, 5, "slow"));
+		edits.add(Edit.delete(10, 6));
+		edits.add(Edit.insert(19, "!"));
+		edits.add(Edit.insert(19, "?"));
+		int rotations = t.totalRotationCount();
+		t.applyBatch(edits);
+		assertEquals(">> the slow cat!?", t.toString());
+		assertEquals(17, t.size());
+		assertTrue(t.totalRotationCount() >= rotations);
+		assertBalanced(t);
+
+		t.applyBatch(Collections.<Edit> emptyList());
+		assertEquals(">> the slow cat!?", t.toString());
+		EditTree empty = new EditTree();
+		empty.applyBatch(Arrays.asList(Edit.insert(0, "abc")));
+		assertEquals("abc", empty.toString());
+	}
+
+	@Test
+	public void testApplyBatchInsertBeforeDelete() {
+		// A pure insert goes before a deletion at the same position
+		EditTree t = makeTree("abcdef");
+		t.applyBatch(Arrays.asList(Edit.delete(2, 2), Edit.insert(2, "XY")));
+		assertEquals("abXYef", t.toString());
+	}
+
+	@Test
+	public void testApplyBatchInvalid() {
+		EditTree t = makeTree(ALPHABET);
+		try {
+			t.applyBatch(Arrays.asList(Edit.delete(0, 5), Edit.insert(3, "x")));
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			t.applyBatch(Arrays.asList(Edit.insert(0, "x"), Edit.delete(20, 7)));
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			t.applyBatch(Arrays.asList(Edit.insert(-1, "x")));
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		assertEquals(ALPHABET, t.toString());
+	}
+
+	@Test
+	public void testApplyBatchRandom() {
+		Random random = new Random(17);
+		for (int round = 0; round < 50; round++) {
+			String s = makeString(random.nextInt(3000), 'a');
+			EditTree t = new EditTree(s);
+			// Build non-overlapping edits, then apply them to a
+			// StringBuilder from the back so earlier positions stay valid.
+			// No two start at the same position, so shuffling them cannot
+			// change the order of two inserts.
+			List<Edit> edits = new ArrayList<Edit>();
+			int position = -1;
+			while (true) {
+				position += 1 + random.nextInt(100);
+				int length = random.nextInt(10);
+				if (position + length > s.length()) {
+					break;
+				}
+				edits.add(new Edit(position, length, makeString(random.nextInt(10), 'A')));
+				position += length;
+			}
+			StringBuilder expected = new StringBuilder(s);
+			for (int i = edits.size() - 1; i >= 0; i--) {
+				Edit edit = edits.get(i);
+				expected.replace(edit.getPosition(), edit.getPosition() + edit.getDeleteLength(), edit.getText());
+			}
+			Collections.shuffle(edits, random);
+			t.applyBatch(edits);
+			assertEquals(expected.toString(), t.toString());
+			assertEquals(expected.length(), t.size());
+			assertBalanced(t);
+		}
+	}
+
+	@Test
+	public void testCharIterator() {
+		for (int n = 0; n < 100; n++) {
+			String s = makeString(n, 'a');
+			PrimitiveIterator.OfInt it = new EditTree(s).charIterator();
+			StringBuilder result = new StringBuilder();
+			while (it.hasNext()) {
+				result.append((char) it.nextInt());
+			}
+			assertEquals(s, result.toString());
+		}
+		assertEquals(0, new EditTree().chars().count());
+	}
+
+	// Splits as far as possible, then checks the pieces are in order.
+	private void collect(Spliterator.OfInt spliterator, final StringBuilder result) {
+		long size = spliterator.estimateSize();
+		int before = result.length();
+		Spliterator.OfInt prefix = spliterator.trySplit();
+		if (prefix != null) {
+			assertEquals(size, prefix.estimateSize() + spliterator.estimateSize());
+			collect(prefix, result);
+			collect(spliterator, result);
+		} else {
+			spliterator.forEachRemaining(new IntConsumer() {
+				@Override
+				public void accept(int ch) {
+					result.append((char) ch);
+				}
+			});
+			assertTrue(size < 2);
+		}
+		assertEquals(size, result.length() - before);
+	}
+
+	@Test
+	public void testSpliterator() {
+		Random random = new Random(20);
+		for (int n = 0; n < 200; n++) {
+			String s = makeString(n, 'a');
+			StringBuilder result = new StringBuilder();
+			collect(new EditTree(s).spliterator(), result);
+			assertEquals(s, result.toString());
+
+			// Also on a tree with a less regular shape
+			EditTree t = makeTree(s);
+			StringBuilder expected = new StringBuilder(s);
+			for (int i = 0; i < 20; i++) {
+				int pos = random.nextInt(t.size() + 1);
+				t.add('!', pos);
+				expected.insert(pos, '!');
+			}
+			result = new StringBuilder();
+			collect(t.spliterator(), result);
+			assertEquals(expected.toString(), result.toString());
+		}
+	}
+
+	@Test
+	public void testSpliteratorHalves() {
+		// The first split of a whole tree is at its root
+		EditTree t = new EditTree(makeString(1000, 'a'));
+		Spliterator.OfInt rest = t.spliterator();
+		Spliterator.OfInt prefix = rest.trySplit();
+		assertEquals(t.getRoot().rank, prefix.estimateSize());
+		assertTrue(rest.hasCharacteristics(Spliterator.SUBSIZED));
+	}
+
+	@Test
+	public void testParallelChars() {
+		String s = makeString(200000, 'a');
+		EditTree t = new EditTree(s);
+		assertEquals(s.length() / 26 + 1, t.chars().parallel().filter(new IntPredicate() {
+			@Override
+			public boolean test(int ch) {
+				return ch == 'a';
+			}
+		}).count());
+		assertEquals(s.chars().sum(), t.chars().parallel().sum());
+	}
+
+	@Test
+	public void testFindMatchesIndexOf() {
+		Random random = new Random(21);
+		for (int round = 0; round < 200; round++) {
+			// A small alphabet makes lots of partial matches
+			StringBuilder text = new StringBuilder();
+			int length = random.nextInt(300);
+			for (int i = 0; i < length; i++) {
+				text.append((char) ('a' + random.nextInt(3)));
+			}
+			String s = text.toString();
+			EditTree t = new EditTree(s);
+			for (int i = 0; i < 20; i++) {
+				int start = random.nextInt(s.length() + 1);
+				String pattern = s.substring(start, Math.min(s.length(), start + random.nextInt(8)));
+				if (random.nextBoolean()) {
+					pattern += (char) ('a' + random.nextInt(3));
+				}
+				int from = random.nextInt(s.length() + 2) - 1;
+				assertEquals(s.indexOf(pattern), t.find(pattern));
+				assertEquals(s.indexOf(pattern, from), t.find(pattern, from));
+			}
+		}
+	}
+
+	@Test
+	public void testFindWithPos() {
+		EditTree t = new EditTree("abcabcabd");
+		assertEquals(6, t.find("abd"));
+		assertEquals(3, t.find("abc", 1));
+		assertEquals(-1, t.find("abc", 4));
+		assertEquals(-1, t.find("ac"));
+		assertEquals(4, t.find("", 4));
+		assertEquals(9, t.find("", 20));
+		assertEquals(0, new EditTree().find(""));
+	}
+}
@@ -0,0 +1,124 @@
+package editortrees;
+
+import static editortrees.EditTreeTestSupport.ALPHABET;
+import static editortrees.Node.NULL_NODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the subtree hashes kept in each {@link editortrees.Node} and
+ * {@link editortrees.EditTree#hash(int, int)}.
+ */
+public class EditTreeHashTest {
+
+	// Every node's hash matches the characters below it.
+	private void assertHashes(Node node) {
+		if (node == NULL_NODE) {
+			return;
+		}
+		assertEquals(Node.hashOf(new String(node.inOrder(new char[node.size]))), node.hash);
+		assertHashes(node.left);
+		assertHashes(node.right);
+	}
+
+	@Test
+	public void testMulMod() {
+		Random random = new Random(22);
+		BigInteger modulus = BigInteger.valueOf(Node.HASH_MODULUS);
+		long[] edges = { 0, 1, 2, Node.HASH_MODULUS - 1, Node.HASH_MODULUS - 2, 1L << 60, (1L << 31) - 1, 1L << 31 };
+		for (long a : edges) {
+			for (long b : edges) {
+				assertEquals(BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).mod(modulus).longValue(),
+						Node.mulMod(a, b));
+			}
+		}
+		for (int i = 0; i < 10000; i++) {
+			long a = (random.nextLong() >>> 3) % Node.HASH_MODULUS;
+			long b = (random.nextLong() >>> 3) % Node.HASH_MODULUS;
+			assertEquals(BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).mod(modulus).longValue(),
+					Node.mulMod(a, b));
+		}
+	}
+
+	@Test
+	public void testHashesAfterEdits() {
+		Random random = new Random(220);
+		EditTree t = new EditTree();
+		for (int i = 0; i < 200; i++) {
+			t.add(ALPHABET.charAt(random.nextInt(26)), random.nextInt(t.size() + 1));
+		}
+		assertHashes(t.getRoot());
+		for (int i = 0; i < 200; i++) {
+			switch (random.nextInt(5)) {
+			case 0:
+				t.add('x');
+				break;
+			case 1:
+				t.delete(random.nextInt(t.size()));
+				break;
+			case 2:
+				t.insert(random.nextInt(t.size() + 1), "hello");
+				break;
+			case 3:
+				int start = random.nextInt(t.size());
+				t.delete(start, random.nextInt(Math.min(10, t.size() - start) + 1));
+				break;
+			default:
+				EditTree right = t.split(random.nextInt(t.size() + 1));
+				assertHashes(right.getRoot());
+				t.concatenate(right);
+			}
+			assertHashes(t.getRoot());
+		}
+		assertHashes(new EditTree(t).getRoot());
+		EditTree copy = new EditTree(t, true);
+		copy.add('y', 7);
+		assertHashes(copy.getRoot());
+		assertHashes(t.getRoot());
+	}
+
+	@Test
+	public void testHashRange() {
+		Random random = new Random(221);
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			s.append(ALPHABET.charAt(random.nextInt(4)));
+		}
+		EditTree t = new EditTree(s.toString());
+		for (int i = 0; i < 2000; i++) {
+			int start = random.nextInt(s.length() + 1);
+			int length = random.nextInt(s.length() - start + 1);
+			assertEquals(EditTree.hashOf(s.substring(start, start + length)), t.hash(start, length));
+		}
+		assertEquals(0, t.hash(100, 0));
+		try {
+			t.hash(490, 11);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testRangeEquals() {
+		EditTree t = new EditTree("abcXabcYabd");
+		assertTrue(t.rangeEquals(0, 4, 3));
+		assertFalse(t.rangeEquals(0, 8, 3));
+		assertTrue(t.rangeEquals(0, 8, 2));
+		// Same text, different shapes
+		EditTree other = new EditTree();
+		for (char ch : "abcXabcYabd".toCharArray()) {
+			other.add(ch, 0);
+			other.add(other.delete(0));
+		}
+		assertEquals(t.hash(0, 11), other.hash(0, 11));
+		assertFalse(new EditTree("ab").hash(0, 2) == new EditTree("ba").hash(0, 2));
+	}
+}
@@ -0,0 +1,126 @@
+package editortrees;
+
+import static editortrees.Node.NULL_NODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the newline counts kept in each {@link editortrees.Node} and the
+ * line lookups on {@link editortrees.EditTree} built on them.
+ */
+public class EditTreeLineTest {
+
+	private int countNewlines(String s) {
+		int count = 0;
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) == '\n') {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private void assertNewlines(Node node) {
+		if (node == NULL_NODE) {
+			return;
+		}
+		assertEquals(countNewlines(new String(node.inOrder(new char[node.size]))), node.newlines);
+		assertNewlines(node.left);
+		assertNewlines(node.right);
+	}
+
+	// Checks every lookup against a scan of the text.
+	private void assertLines(EditTree t, String s) {
+		assertEquals(countNewlines(s) + 1, t.lineCount());
+		int line = 0;
+		assertEquals(0, t.offsetOfLine(0));
+		for (int offset = 0; offset <= s.length(); offset++) {
+			assertEquals(line, t.lineOfOffset(offset));
+			if (offset < s.length() && s.charAt(offset) == '\n') {
+				line++;
+				assertEquals(offset + 1, t.offsetOfLine(line));
+			}
+		}
+	}
+
+	@Test
+	public void testLines() {
+		String s = "first\nsecond\n\nfourth\n";
+		EditTree t = new EditTree(s);
+		assertEquals(5, t.lineCount());
+		assertEquals(6, t.offsetOfLine(1));
+		assertEquals(14, t.offsetOfLine(3));
+		assertEquals(21, t.offsetOfLine(4));
+		assertEquals(0, t.lineOfOffset(5));
+		assertEquals(1, t.lineOfOffset(6));
+		assertEquals(4, t.lineOfOffset(21));
+		assertLines(t, s);
+
+		EditTree empty = new EditTree();
+		assertEquals(1, empty.lineCount());
+		assertEquals(0, empty.offsetOfLine(0));
+		assertEquals(0, empty.lineOfOffset(0));
+	}
+
+	@Test
+	public void testBounds() {
+		EditTree t = new EditTree("a\nb");
+		try {
+			t.offsetOfLine(2);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			t.lineOfOffset(4);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			t.offsetOfLine(-1);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testLinesAfterEdits() {
+		Random random = new Random(23);
+		EditTree t = new EditTree();
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 1500; i++) {
+			int op = random.nextInt(8);
+			if (op < 4 || s.length() == 0) {
+				int pos = random.nextInt(s.length() + 1);
+				char ch = random.nextInt(5) == 0 ? '\n' : 'x';
+				t.add(ch, pos);
+				s.insert(pos, ch);
+			} else if (op < 6) {
+				int pos = random.nextInt(s.length());
+				assertEquals(s.charAt(pos), t.delete(pos));
+				s.deleteCharAt(pos);
+			} else if (op == 6) {
+				int pos = random.nextInt(s.length() + 1);
+				t.insert(pos, "ab\ncd\n");
+				s.insert(pos, "ab\ncd\n");
+			} else {
+				int start = random.nextInt(s.length());
+				int length = random.nextInt(Math.min(15, s.length() - start) + 1);
+				t.delete(start, length);
+				s.delete(start, start + length);
+			}
+			if (i % 100 == 0) {
+				assertNewlines(t.getRoot());
+				assertLines(t, s.toString());
+			}
+		}
+		assertNewlines(t.getRoot());
+		assertLines(t, s.toString());
+	}
+}
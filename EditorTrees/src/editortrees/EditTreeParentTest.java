@@ -0,0 +1,216 @@
+package editortrees;
+
+import static editortrees.EditTreeTestSupport.ALPHABET;
+import static editortrees.EditTreeTestSupport.makeString;
+import static editortrees.Node.NULL_NODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that parent links stay correct through every kind of edit, and the
+ * bottom-up operations built on them.
+ */
+public class EditTreeParentTest {
+
+	// Every child below root points back at its parent.
+	private void assertParents(Node root) {
+		if (root == NULL_NODE) {
+			return;
+		}
+		if (root.left != NULL_NODE) {
+			assertSame(root, root.left.parent);
+			assertParents(root.left);
+		}
+		if (root.right != NULL_NODE) {
+			assertSame(root, root.right.parent);
+			assertParents(root.right);
+		}
+	}
+
+	private void assertPositions(EditTree t) {
+		assertParents(t.getRoot());
+		for (int i = 0; i < t.size(); i++) {
+			assertEquals(i, t.positionOf(t.nodeAt(i)));
+		}
+	}
+
+	@Test
+	public void testParentsAfterAdds() {
+		EditTree t = new EditTree();
+		for (int i = 0; i < 100; i++) {
+			t.add(ALPHABET.charAt(i % 26));
+			assertPositions(t);
+		}
+		Random random = new Random(19);
+		for (int i = 0; i < 300; i++) {
+			t.add('x', random.nextInt(t.size() + 1));
+		}
+		assertPositions(t);
+	}
+
+	@Test
+	public void testParentsAfterRandomEdits() {
+		Random random = new Random(190);
+		EditTree t = new EditTree(makeString(500));
+		for (int i = 0; i < 400; i++) {
+			switch (random.nextInt(6)) {
+			case 0:
+				t.add('x', random.nextInt(t.size() + 1));
+				break;
+			case 1:
+				t.delete(random.nextInt(t.size()));
+				break;
+			case 2:
+				t.insert(random.nextInt(t.size() + 1), makeString(random.nextInt(40)));
+				break;
+			case 3:
+				int start = random.nextInt(t.size());
+				t.delete(start, random.nextInt(Math.min(20, t.size() - start) + 1));
+				break;
+			case 4:
+				EditTree right = t.split(random.nextInt(t.size() + 1));
+				assertPositions(right);
+				right.add('y', 0);
+				t.concatenate(right);
+				break;
+			default:
+				t.applyBatch(Arrays.asList(Edit.insert(0, "ab"), new Edit(t.size() / 2, 1, "cd")));
+			}
+			assertPositions(t);
+		}
+		assertPositions(new EditTree(t));
+	}
+
+	@Test
+	public void testSuccessorAndPredecessor() {
+		String s = makeString(200);
+		EditTree t = new EditTree(s);
+		Node node = t.nodeAt(0);
+		for (int i = 0; i < s.length(); i++) {
+			assertEquals(s.charAt(i), node.element);
+			node = t.successorOf(node);
+		}
+		assertNull(node);
+		node = t.nodeAt(s.length() - 1);
+		for (int i = s.length() - 1; i >= 0; i--) {
+			assertEquals(s.charAt(i), node.element);
+			node = t.predecessorOf(node);
+		}
+		assertNull(node);
+	}
+
+	@Test
+	public void testRemovedNode() {
+		EditTree t = new EditTree(makeString(50));
+		Node leaf = t.nodeAt(0);
+		t.delete(0);
+		try {
+			t.positionOf(leaf);
+			fail("Did not throw IllegalStateException");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		EditTree other = new EditTree(makeString(50));
+		try {
+			other.positionOf(t.nodeAt(10));
+			fail("Did not throw IllegalStateException");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	// Checks every node query at every position of a tree that may share
+	// nodes with another.
+	private void assertNodeQueries(EditTree t) {
+		String s = t.toString();
+		for (int i = 0; i < s.length(); i++) {
+			Node node = t.nodeAt(i);
+			assertEquals(s.charAt(i), node.element);
+			assertEquals(i, t.positionOf(node));
+			Node next = t.successorOf(node);
+			if (i == s.length() - 1) {
+				assertNull(next);
+			} else {
+				assertEquals(s.charAt(i + 1), next.element);
+				assertEquals(i + 1, t.positionOf(next));
+			}
+			Node previous = t.predecessorOf(node);
+			if (i == 0) {
+				assertNull(previous);
+			} else {
+				assertEquals(s.charAt(i - 1), previous.element);
+				assertEquals(i - 1, t.positionOf(previous));
+			}
+		}
+		// A walk hands each node on to the next query
+		Node node = t.nodeAt(0);
+		for (int i = 0; i < s.length(); i++) {
+			assertEquals(s.charAt(i), node.element);
+			node = t.successorOf(node);
+		}
+		assertNull(node);
+	}
+
+	@Test
+	public void testCopyOnWriteTree() {
+		EditTree original = new EditTree(makeString(100));
+		EditTree copy = new EditTree(original, true);
+		copy.add('!', 40);
+		assertNodeQueries(copy);
+		assertNodeQueries(original);
+		assertEquals(makeString(100), original.toString());
+		original.delete(70);
+		assertNodeQueries(original);
+		assertNodeQueries(copy);
+	}
+
+	@Test
+	public void testSnapshot() {
+		EditTree t = EditTree.of("hello world, this is a document");
+		PersistentEditTree before = t.snapshot();
+		t.add('!', t.size());
+		assertEquals(0, t.positionOf(t.nodeAt(0)));
+		assertNodeQueries(t);
+		assertEquals("hello world, this is a document", before.toString());
+		t.snapshot();
+		t.delete(5);
+		assertNodeQueries(t);
+	}
+
+	@Test
+	public void testRandomSharingAndQueries() {
+		Random random = new Random(1019);
+		EditTree t = new EditTree(makeString(300));
+		ArrayList<PersistentEditTree> versions = new ArrayList<PersistentEditTree>();
+		for (int i = 0; i < 200; i++) {
+			int op = random.nextInt(4);
+			if (op == 0) {
+				versions.add(t.snapshot());
+			} else if (op == 1) {
+				t = new EditTree(t, true);
+			} else if (op == 2) {
+				t.add('!', random.nextInt(t.size() + 1));
+			} else {
+				t.delete(random.nextInt(t.size()));
+			}
+			int pos = random.nextInt(t.size());
+			Node node = t.nodeAt(pos);
+			assertEquals(pos, t.positionOf(node));
+			if (pos + 1 < t.size()) {
+				assertEquals(pos + 1, t.positionOf(t.successorOf(node)));
+			}
+			if (pos > 0) {
+				assertEquals(pos - 1, t.positionOf(t.predecessorOf(node)));
+			}
+		}
+		assertNodeQueries(t);
+	}
+}
@@ -0,0 +1,363 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.Summary} and
+ * {@link editortrees.EditTree#summarize(Summary, int, int)}.
+ */
+public class EditTreeSummaryTest {
+
+	// Counts vowels.
+	private static final Summary<Integer> VOWELS = new Summary<Integer>() {
+		@Override
+		public Integer identity() {
+			return 0;
+		}
+
+		@Override
+		public Integer combine(Integer left, Integer right) {
+			return left + right;
+		}
+
+		@Override
+		public Integer leaf(char ch) {
+			return "aeiou".indexOf(ch) >= 0 ? 1 : 0;
+		}
+	};
+
+	// Words in a run, and whether it starts or ends in the middle of one.
+	private static final class Words {
+		final int count;
+		final int length;
+		final boolean startsInWord, endsInWord;
+
+		Words(int count, int length, boolean startsInWord, boolean endsInWord) {
+			this.count = count;
+			this.length = length;
+			this.startsInWord = startsInWord;
+			this.endsInWord = endsInWord;
+		}
+	}
+
+	// Counts words separated by spaces; combining has to notice a word that
+	// straddles the two pieces, so the order of the pieces matters.
+	private static final Summary<Words> WORDS = new Summary<Words>() {
+		@Override
+		public Words identity() {
+			return new Words(0, 0, false, false);
+		}
+
+		@Override
+		public Words combine(Words left, Words right) {
+			if (left.length == 0) {
+				return right;
+			} else if (right.length == 0) {
+				return left;
+			}
+			int count = left.count + right.count - (left.endsInWord && right.startsInWord ? 1 : 0);
+			return new Words(count, left.length + right.length, left.startsInWord, right.endsInWord);
+		}
+
+		@Override
+		public Words leaf(char ch) {
+			boolean word = ch != ' ';
+			return new Words(word ? 1 : 0, 1, word, word);
+		}
+	};
+
+	// Registers VOWELS and WORDS with t.
+	private static EditTree withSummaries(EditTree t) {
+		t.register(VOWELS);
+		t.register(WORDS);
+		return t;
+	}
+
+	private int countVowels(String s) {
+		int count = 0;
+		for (int i = 0; i < s.length(); i++) {
+			count += VOWELS.leaf(s.charAt(i));
+		}
+		return count;
+	}
+
+	private int countWords(String s) {
+		int count = 0;
+		for (String word : s.split(" ")) {
+			if (!word.isEmpty()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Test
+	public void testSummarize() {
+		EditTree t = withSummaries(new EditTree("the quick brown fox jumps"));
+		assertEquals(5, t.summarize(WORDS).count);
+		assertEquals(6, (int) t.summarize(VOWELS));
+		assertEquals(2, t.summarize(WORDS, 2, 6).count);
+		assertEquals(1, t.summarize(WORDS, 5, 3).count);
+		assertEquals(0, t.summarize(WORDS, 3, 1).count);
+		assertEquals(0, (int) t.summarize(VOWELS, 4, 0));
+		assertEquals(0, (int) withSummaries(new EditTree()).summarize(VOWELS));
+		try {
+			t.summarize(VOWELS, 20, 6);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testSummariesFollowEdits() {
+		Random random = new Random(24);
+		String letters = "ab e io  u";
+		EditTree t = withSummaries(new EditTree());
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			switch (random.nextInt(6)) {
+			case 0:
+			case 1:
+				int pos = random.nextInt(s.length() + 1);
+				char ch = letters.charAt(random.nextInt(letters.length()));
+				t.add(ch, pos);
+				s.insert(pos, ch);
+				break;
+			case 2:
+				if (s.length() > 0) {
+					pos = random.nextInt(s.length());
+					t.delete(pos);
+					s.deleteCharAt(pos);
+				}
+				break;
+			case 3:
+				pos = random.nextInt(s.length() + 1);
+				t.insert(pos, "one two ");
+				s.insert(pos, "one two ");
+				break;
+			case 4:
+				pos = random.nextInt(s.length() + 1);
+				EditTree right = t.split(pos);
+				right.add('z', 0);
+				t.concatenate(right);
+				s.insert(pos, 'z');
+				break;
+			default:
+				t.add(' ');
+				s.append(' ');
+			}
+			if (i % 50 == 0) {
+				String text = s.toString();
+				assertEquals(countVowels(text), (int) t.summarize(VOWELS));
+				assertEquals(countWords(text), t.summarize(WORDS).count);
+				for (int j = 0; j < 10; j++) {
+					int start = random.nextInt(text.length() + 1);
+					int length = random.nextInt(text.length() - start + 1);
+					String range = text.substring(start, start + length);
+					assertEquals(countWords(range), t.summarize(WORDS, start, length).count);
+					assertEquals(countVowels(range), (int) t.summarize(VOWELS, start, length));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testEditOnlyRecomputesItsPath() {
+		final int[] leaves = new int[1];
+		Summary<Integer> counting = new Summary<Integer>() {
+			@Override
+			public Integer identity() {
+				return 0;
+			}
+
+			@Override
+			public Integer combine(Integer left, Integer right) {
+				return left + right;
+			}
+
+			@Override
+			public Integer leaf(char ch) {
+				leaves[0]++;
+				return 1;
+			}
+		};
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			s.append('x');
+		}
+		EditTree t = EditTree.of(s);
+		// Registering computes every value up front, so the first query is
+		// as cheap as any other
+		t.register(counting);
+		assertEquals(100000, leaves[0]);
+		assertEquals(100000, (int) t.summarize(counting));
+		assertEquals(100000, leaves[0]);
+		leaves[0] = 0;
+		t.add('y', 54321);
+		t.delete(12345);
+		assertEquals(100000, (int) t.summarize(counting));
+		// Only nodes on the two changed paths are looked at again
+		assertTrue(leaves[0] <= 4 * (t.height() + 1));
+		leaves[0] = 0;
+		assertEquals(50000, (int) t.summarize(counting, 25000, 50000));
+		assertTrue(leaves[0] <= 2 * (t.height() + 1));
+	}
+
+	// Holds once a prefix has at least count vowels.
+	private static Predicate<Integer> atLeast(final int count) {
+		return new Predicate<Integer>() {
+			@Override
+			public boolean test(Integer vowels) {
+				return vowels >= count;
+			}
+		};
+	}
+
+	@Test
+	public void testSeek() {
+		EditTree t = withSummaries(new EditTree("the quick brown fox jumps"));
+		// Position of the nth vowel
+		assertEquals(2, t.seek(VOWELS, atLeast(1)));
+		assertEquals(5, t.seek(VOWELS, atLeast(2)));
+		assertEquals(6, t.seek(VOWELS, atLeast(3)));
+		assertEquals(21, t.seek(VOWELS, atLeast(6)));
+		assertEquals(-1, t.seek(VOWELS, atLeast(7)));
+		assertEquals(0, t.seek(VOWELS, atLeast(0)));
+		assertEquals(-1, withSummaries(new EditTree()).seek(VOWELS, atLeast(0)));
+
+		// Start of the nth word
+		Predicate<Words> fourthWord = new Predicate<Words>() {
+			@Override
+			public boolean test(Words words) {
+				return words.count >= 4;
+			}
+		};
+		assertEquals(16, t.seek(WORDS, fourthWord));
+	}
+
+	@Test
+	public void testSeekAfterEdits() {
+		Random random = new Random(25);
+		EditTree t = withSummaries(new EditTree());
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			int pos = random.nextInt(s.length() + 1);
+			char ch = "abcdefghijklmnopqrstuvwxyz".charAt(random.nextInt(26));
+			t.add(ch, pos);
+			s.insert(pos, ch);
+			if (random.nextInt(3) == 0) {
+				pos = random.nextInt(s.length());
+				t.delete(pos);
+				s.deleteCharAt(pos);
+			}
+			if (i % 100 == 0) {
+				String text = s.toString();
+				int vowels = 0;
+				for (int j = 0; j < text.length(); j++) {
+					if (VOWELS.leaf(text.charAt(j)) == 1) {
+						vowels++;
+						assertEquals(j, t.seek(VOWELS, atLeast(vowels)));
+					}
+				}
+				assertEquals(-1, t.seek(VOWELS, atLeast(vowels + 1)));
+			}
+		}
+	}
+
+	@Test
+	public void testSharedVersions() {
+		// Versions share cached values for the nodes they share, and an edit
+		// to one never shows up in the other
+		PersistentEditTree first = new PersistentEditTree("a e i o u and then some");
+		assertEquals(countWords("a e i o u and then some"), withSummaries(first.toEditTree()).summarize(WORDS).count);
+		PersistentEditTree second = first.insert(3, "xx yy ");
+		assertEquals(countWords("a exx yy  i o u and then some"),
+				withSummaries(second.toEditTree()).summarize(WORDS).count);
+		assertEquals(countWords("a e i o u and then some"), withSummaries(first.toEditTree()).summarize(WORDS).count);
+		assertEquals(countVowels("a exx yy  i o u and then some"),
+				(int) withSummaries(second.toEditTree()).summarize(VOWELS));
+	}
+
+	// Counts occurrences of ch.
+	private static Summary<Integer> occurrences(final char ch) {
+		return new Summary<Integer>() {
+			@Override
+			public Integer identity() {
+				return 0;
+			}
+
+			@Override
+			public Integer combine(Integer left, Integer right) {
+				return left + right;
+			}
+
+			@Override
+			public Integer leaf(char c) {
+				return c == ch ? 1 : 0;
+			}
+		};
+	}
+
+	@Test
+	public void testManySummariesStayCached() {
+		EditTree t = new EditTree("abracadabra");
+		List<Summary<Integer>> summaries = new ArrayList<Summary<Integer>>();
+		for (int i = 0; i < 20; i++) {
+			summaries.add(occurrences((char) ('a' + i)));
+			t.register(summaries.get(i));
+		}
+		// Registering the same instance again adds nothing
+		t.register(summaries.get(0));
+		List<Summary<?>> cached = new ArrayList<Summary<?>>();
+		for (Node.SummaryCache entry = t.getRoot().summaryCache; entry != null; entry = entry.next) {
+			cached.add(entry.summary);
+		}
+		assertEquals(20, cached.size());
+		for (Summary<Integer> summary : summaries) {
+			assertTrue(cached.contains(summary));
+		}
+		assertEquals(Integer.valueOf(5), t.summarize(summaries.get(0)));
+		assertEquals(Integer.valueOf(2), t.summarize(summaries.get(1)));
+		assertEquals(Integer.valueOf(0), t.summarize(summaries.get(19)));
+	}
+
+	@Test
+	public void testUnregisteredSummary() {
+		EditTree t = new EditTree("the quick brown fox jumps");
+		try {
+			t.summarize(VOWELS);
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			t.summarize(VOWELS, 0, 3);
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			t.seek(VOWELS, atLeast(1));
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		t.register(VOWELS);
+		assertEquals(6, (int) t.summarize(VOWELS));
+		// Copies and split-off trees keep the registrations
+		assertEquals(6, (int) new EditTree(t).summarize(VOWELS));
+		assertEquals(6, (int) new EditTree(t, true).summarize(VOWELS));
+		assertEquals(1, (int) t.split(19).summarize(VOWELS));
+		assertEquals(5, (int) t.summarize(VOWELS));
+	}
+}
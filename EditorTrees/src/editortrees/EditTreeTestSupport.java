@@ -0,0 +1,43 @@
+package editortrees;
+
+/**
+ * Strings and bounds shared by the tests of the trees in this package.
+ */
+final class EditTreeTestSupport {
+
+	static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz";
+
+	private EditTreeTestSupport() {
+	}
+
+	// The height of the tallest height-balanced tree with this many nodes,
+	// found by counting up through the Fibonacci trees. Same bound as in
+	// EditTreeMilestone3Test.
+	static int maxHeight(int nodes) {
+		int height = -1;
+		int maxNodes = 1;
+		int prevMaxNodes = 0;
+
+		while (nodes >= maxNodes) {
+			int temp = prevMaxNodes;
+			prevMaxNodes = maxNodes;
+			maxNodes = temp + maxNodes + 1;
+			height++;
+		}
+
+		return height;
+	}
+
+	// length characters going round the alphabet, starting at start.
+	static String makeString(int length, char start) {
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			s.append((char) (start + i % 26));
+		}
+		return s.toString();
+	}
+
+	static String makeString(int length) {
+		return makeString(length, 'a');
+	}
+}
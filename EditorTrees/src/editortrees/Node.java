@@ -1,12 +1,25 @@
 package editortrees;
 
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
 
 import editortrees.EditTree.Container;
 
 // A node in a height-balanced binary tree with rank.
-// Except for the NULL_NODE (if you choose to use one), one node cannot
-// belong to two different trees.
+// A node may be reachable from more than one tree (or version of a tree)
+// once it has been marked shared. Shared nodes are never changed; a tree
+// that needs to change one works on a private copy instead (see mutable()),
+// so only the nodes on the path being edited are ever copied.
+//
+// Every node that is not shared has its parent field set to its parent,
+// kept up to date by updateNode() and the rotations. A shared node has a
+// parent in each tree that can see it, so its parent field only names one
+// of them; EditTree.nodeAt() copies such nodes out before handing one out.
+// A tree's root may still point at a node it used to hang from; EditTree
+// stops climbing at its own root.
 
 public class Node {
 	public int height = 0;
@@ -41,9 +54,47 @@ public class Node {
 	Node left, right, parent;
 	int rank, size;
 	Code balance;
+	boolean shared;
+	// Polynomial hash of this subtree's characters, and HASH_BASE to the
+	// power of its size; see hashRange().
+	long hash, power;
+	// Number of '\n' characters in this subtree.
+	int newlines;
+	// Values of the summaries registered with the tree for this subtree,
+	// filled in by summarize() and thrown away whenever the subtree changes.
+	// Filling it in does not change what the subtree holds, so shared nodes
+	// get one too.
+	SummaryCache summaryCache;
+
+	// One cached summary value. The fields are final so that a tree read
+	// from several threads never sees one half built. A chain holds at most
+	// one entry per registered summary, so nothing is ever evicted.
+	static final class SummaryCache {
+
+		final Summary<?> summary;
+		final Object value;
+		final SummaryCache next;
+
+		SummaryCache(Summary<?> summary, Object value, SummaryCache next) {
+			this.summary = summary;
+			this.value = value;
+			this.next = next;
+		}
+	}
 
 	public static final Node NULL_NODE = new Node();
 
+	// Below this many characters a parallel build just builds sequentially.
+	public static final int PARALLEL_BUILD_THRESHOLD = 1 << 16;
+
+	// Hashes are taken modulo this Mersenne prime, 2^61 - 1, which makes
+	// reducing a product cheap.
+	public static final long HASH_MODULUS = (1L << 61) - 1;
+	// Picked at random when the class loads, so no fixed set of strings
+	// collides more often than the bound EditTree.hash() gives. Hashes are
+	// therefore only comparable within one JVM.
+	public static final long HASH_BASE = ThreadLocalRandom.current().nextLong(1L << 16, HASH_MODULUS);
+
 	/**
 	 * Creates a new node with the given character passed as a parameter.
 	 * 
@@ -51,7 +102,7 @@ public class Node {
 	 * 
 	 * @return none
 	 */
-	public Node(Character data) {
+	public Node(char data) {
 		// Basic Node data
 		this.element = data;
 		this.left = NULL_NODE;
@@ -62,6 +113,9 @@ public class Node {
 		this.balance = Code.SAME;
 		this.size = 1;
 		this.height = 0;
+		this.hash = data;
+		this.power = HASH_BASE;
+		this.newlines = data == '\n' ? 1 : 0;
 	}
 
 	/**
@@ -78,7 +132,52 @@ public class Node {
 		this.right = null;
 		this.height = -1;
 		this.size = 0;
+		this.hash = 0;
+		this.power = 1;
+	}
+
+	/**
+	 * Marks this node as reachable from more than one tree, so that nobody
+	 * changes it in place any more. The NULL_NODE is left alone.
+	 * 
+	 * @param
+	 * 
+	 * @return Node
+	 */
+	public Node share() {
+
+		if (this != NULL_NODE && !this.shared) {
+			this.shared = true;
+		}
+		return this;
+	}
+
+	/**
+	 * Returns this node if only one tree can see it. Otherwise returns a copy
+	 * that the caller owns; the children are now reachable from both the
+	 * original and the copy, so they are marked shared in turn.
+	 * 
+	 * @param
+	 * 
+	 * @return Node
+	 */
+	public Node mutable() {
 
+		if (!this.shared) {
+			return this;
+		}
+		Node copy = new Node(this.element);
+		copy.left = this.left.share();
+		copy.right = this.right.share();
+		copy.rank = this.rank;
+		copy.size = this.size;
+		copy.height = this.height;
+		copy.balance = this.balance;
+		copy.hash = this.hash;
+		copy.power = this.power;
+		copy.newlines = this.newlines;
+		copy.summaryCache = this.summaryCache;
+		return copy;
 	}
 
 	/**
@@ -116,16 +215,69 @@ public class Node {
 	 * 
 	 * @return ArrayList<Character>
 	 */
-	public ArrayList<Character> inOrder(ArrayList<Character> list) {
+	public ArrayList<Character> inOrder(final ArrayList<Character> list) {
 
-		if (left != NULL_NODE) {
-			left.inOrder(list);
+		this.forEach(new CharConsumer() {
+			@Override
+			public void accept(char ch) {
+				list.add(ch);
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * Hands every character of a Binary Tree to action, in order. Uses an
+	 * explicit stack, which never needs more than height + 1 entries, so deep
+	 * trees cannot overflow the call stack.
+	 * 
+	 * @param action
+	 * 
+	 * @return
+	 */
+	public void forEach(CharConsumer action) {
+
+		Node[] stack = new Node[this.height + 1];
+		int top = 0;
+		Node current = this;
+		while (current != NULL_NODE || top > 0) {
+			// Go as far left as possible, remembering the way back up
+			while (current != NULL_NODE) {
+				stack[top++] = current;
+				current = current.left;
+			}
+			current = stack[--top];
+			action.accept(current.element);
+			current = current.right;
 		}
-		list.add(this.element);
-		if (right != NULL_NODE) {
-			right.inOrder(list);
+	}
+
+	/**
+	 * Fills chars with an in order traversal of a Binary Tree. Uses an
+	 * explicit stack, which never needs more than height + 1 entries, rather
+	 * than recursion. chars must have room for size characters.
+	 * 
+	 * @param chars
+	 * 
+	 * @return char[]
+	 */
+	public char[] inOrder(char[] chars) {
+
+		Node[] stack = new Node[this.height + 1];
+		int top = 0;
+		int offset = 0;
+		Node current = this;
+		while (current != NULL_NODE || top > 0) {
+			// Go as far left as possible, remembering the way back up
+			while (current != NULL_NODE) {
+				stack[top++] = current;
+				current = current.left;
+			}
+			current = stack[--top];
+			chars[offset++] = current.element;
+			current = current.right;
 		}
-		return list;
+		return chars;
 	}
 
 	/**
@@ -138,16 +290,26 @@ public class Node {
 	 */
 	public ArrayList<String> inOrderDebug(ArrayList<String> list) {
 
-		String toAdd = new String();
-		toAdd += this.element;
-		toAdd += this.rank;
-		toAdd += this.balance;
-		list.add(toAdd);
-		if (left != NULL_NODE) {
-			left.inOrderDebug(list);
+		// Pre-order: the right child is pushed first so the left one is
+		// visited first
+		Node[] stack = new Node[this.height + 2];
+		int top = 0;
+		if (this != NULL_NODE) {
+			stack[top++] = this;
 		}
-		if (right != NULL_NODE) {
-			right.inOrderDebug(list);
+		while (top > 0) {
+			Node current = stack[--top];
+			String toAdd = new String();
+			toAdd += current.element;
+			toAdd += current.rank;
+			toAdd += current.balance;
+			list.add(toAdd);
+			if (current.right != NULL_NODE) {
+				stack[top++] = current.right;
+			}
+			if (current.left != NULL_NODE) {
+				stack[top++] = current.left;
+			}
 		}
 		return list;
 	}
@@ -183,12 +345,18 @@ public class Node {
 
 		if (this == NULL_NODE) {
 			return new Node(ch);
+		} else if (this.shared) {
+			return this.mutable().add(ch, container);
 		}
 		this.right = this.right.add(ch, container);
 		this.height = Math.max(this.left.height, this.right.height) + 1;
 		this.size++;
 
 		this.setNodeBalance();
+		this.adoptChildren();
+		this.updateHash();
+		this.updateNewlines();
+		this.summaryCache = null;
 		return this.checkForRotation(container);
 	}
 
@@ -202,6 +370,9 @@ public class Node {
 	 */
 	public Node add(char ch, int position, Container container) {
 
+		if (this.shared) {
+			return this.mutable().add(ch, position, container);
+		}
 		if (position == this.rank) {
 			this.rank++;
 			if (this.left == NULL_NODE) {
@@ -256,6 +427,33 @@ public class Node {
 		return this.element;
 	}
 
+	/**
+	 * Copies the characters at positions from (inclusive) to to (exclusive)
+	 * of this subtree into dest, starting at offset. Only subtrees that
+	 * overlap the range are visited, so this is O(log N + (to - from)).
+	 * 
+	 * @param from,
+	 *            to, dest, offset
+	 * 
+	 * @return int the offset just past the last character copied
+	 */
+	public int copyRange(int from, int to, char[] dest, int offset) {
+
+		if (this == NULL_NODE || from >= to) {
+			return offset;
+		}
+		if (from < this.rank) {
+			offset = this.left.copyRange(from, Math.min(to, this.rank), dest, offset);
+		}
+		if (from <= this.rank && this.rank < to) {
+			dest[offset++] = this.element;
+		}
+		if (to > this.rank + 1) {
+			offset = this.right.copyRange(Math.max(from - (this.rank + 1), 0), to - (this.rank + 1), dest, offset);
+		}
+		return offset;
+	}
+
 	/**
 	 * Performs a single left rotation on a set of nodes.
 	 * 
@@ -266,6 +464,7 @@ public class Node {
 	 */
 	public Node rotateSingleLeft(Node node, Container container) {
 
+		this.right = this.right.mutable();
 		node = this.right;
 		this.right = this.right.left;
 		node.left = this;
@@ -286,6 +485,7 @@ public class Node {
 	 */
 	public Node rotateSingleRight(Node node, Container container) {
 
+		this.left = this.left.mutable();
 		node = this.left;
 		this.left = this.left.right;
 		node.right = this;
@@ -305,6 +505,8 @@ public class Node {
 	 */
 	public Node rotateDoubleRight(Node node, Container container) {
 
+		this.left = this.left.mutable();
+		this.left.right = this.left.right.mutable();
 		node = this.left.right;
 		Node temp1 = this.left.right.left;
 		node.left = this.left;
@@ -329,6 +531,8 @@ public class Node {
 	 */
 	public Node rotateDoubleLeft(Node node, Container container) {
 
+		this.right = this.right.mutable();
+		this.right.left = this.right.left.mutable();
 		node = this.right.left;
 		Node temp1 = this.right.left.right;
 		node.right = this.right;
@@ -397,6 +601,324 @@ public class Node {
 		this.size = this.left.size + this.right.size + 1;
 		this.rank = this.left.size;
 		this.setNodeBalance();
+		this.adoptChildren();
+		this.updateHash();
+		this.updateNewlines();
+		this.summaryCache = null;
+	}
+
+	/**
+	 * Returns the value of summary for this whole subtree, computing and
+	 * caching it for any node below that does not have it yet.
+	 * 
+	 * @param summary
+	 * 
+	 * @return S
+	 */
+	@SuppressWarnings("unchecked")
+	public <S> S summarize(Summary<S> summary) {
+
+		if (this == NULL_NODE) {
+			return summary.identity();
+		}
+		for (SummaryCache entry = this.summaryCache; entry != null; entry = entry.next) {
+			if (entry.summary == summary) {
+				return (S) entry.value;
+			}
+		}
+		S value = summary.combine(summary.combine(this.left.summarize(summary), summary.leaf(this.element)),
+				this.right.summarize(summary));
+		this.summaryCache = new SummaryCache(summary, value, this.summaryCache);
+		return value;
+	}
+
+	/**
+	 * Finds the first position p in this subtree where predicate holds for
+	 * the summary of positions 0 through p, given that it holds for every
+	 * position after that too. Steers by the summaries of the left children
+	 * the way get() steers by rank, so it visits one path.
+	 * 
+	 * @param summary,
+	 *            predicate
+	 * 
+	 * @return int the position, or -1 if the predicate holds nowhere
+	 */
+	public <S> int seek(Summary<S> summary, Predicate<? super S> predicate) {
+
+		// Summary of everything before node
+		S before = summary.identity();
+		int offset = 0;
+		Node node = this;
+		while (node != NULL_NODE) {
+			S throughLeft = summary.combine(before, node.left.summarize(summary));
+			// With no left child, a predicate that already holds before
+			// node holds through it too, and node is the answer
+			if (node.left != NULL_NODE && predicate.test(throughLeft)) {
+				node = node.left;
+				continue;
+			}
+			S throughNode = summary.combine(throughLeft, summary.leaf(node.element));
+			if (predicate.test(throughNode)) {
+				return offset + node.rank;
+			}
+			before = throughNode;
+			offset += node.rank + 1;
+			node = node.right;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the value of summary for the characters at positions from
+	 * (inclusive) to to (exclusive) of this subtree. Whole subtrees inside
+	 * the range use their cached values, so this is O(log N) once they are
+	 * cached.
+	 * 
+	 * @param summary,
+	 *            from, to
+	 * 
+	 * @return S
+	 */
+	public <S> S summarize(Summary<S> summary, int from, int to) {
+
+		if (this == NULL_NODE || from >= to) {
+			return summary.identity();
+		} else if (from <= 0 && to >= this.size) {
+			return this.summarize(summary);
+		}
+		S result = summary.identity();
+		if (from < this.rank) {
+			result = this.left.summarize(summary, from, Math.min(to, this.rank));
+		}
+		if (from <= this.rank && this.rank < to) {
+			result = summary.combine(result, summary.leaf(this.element));
+		}
+		if (to > this.rank + 1) {
+			result = summary.combine(result,
+					this.right.summarize(summary, Math.max(from - (this.rank + 1), 0), to - (this.rank + 1)));
+		}
+		return result;
+	}
+
+	/**
+	 * Recomputes the newline count of this subtree from its children's.
+	 * 
+	 * @param
+	 * 
+	 * @return
+	 */
+	public void updateNewlines() {
+
+		this.newlines = this.left.newlines + this.right.newlines + (this.element == '\n' ? 1 : 0);
+	}
+
+	/**
+	 * Counts the newlines before position in this subtree, walking down
+	 * once the way get() does.
+	 * 
+	 * @param position
+	 * 
+	 * @return int
+	 */
+	public int newlinesBefore(int position) {
+
+		int count = 0;
+		Node node = this;
+		while (node != NULL_NODE) {
+			if (position <= node.rank) {
+				node = node.left;
+			} else {
+				count += node.left.newlines + (node.element == '\n' ? 1 : 0);
+				position -= node.rank + 1;
+				node = node.right;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Knuth-Morris-Pratt over a single in-order walk of this subtree starting
+	 * at pos, so no character is looked at twice. The walk only reads, so
+	 * this is safe on nodes other threads can see. An empty s is found at
+	 * pos and a negative pos is treated as 0.
+	 * 
+	 * @param s,
+	 *            pos
+	 * 
+	 * @return int the position of the first occurrence of s at or after pos;
+	 *         -1 if there is none
+	 */
+	public int find(String s, int pos) {
+
+		pos = Math.max(pos, 0);
+		if (s.length() == 0) {
+			return Math.min(pos, this.size);
+		} else if (this.size - pos < s.length()) {
+			return -1;
+		}
+		// fallback[j] is the length of the longest proper prefix of s that
+		// is also a suffix of its first j + 1 characters
+		int[] fallback = new int[s.length()];
+		for (int j = 1, k = 0; j < s.length(); j++) {
+			while (k > 0 && s.charAt(j) != s.charAt(k)) {
+				k = fallback[k - 1];
+			}
+			if (s.charAt(j) == s.charAt(k)) {
+				k++;
+			}
+			fallback[j] = k;
+		}
+		CharSpliterator chars = new CharSpliterator(this, pos, this.size);
+		int matched = 0;
+		for (int i = pos; i < this.size; i++) {
+			char ch = chars.nextChar();
+			while (matched > 0 && ch != s.charAt(matched)) {
+				matched = fallback[matched - 1];
+			}
+			if (ch == s.charAt(matched)) {
+				matched++;
+				if (matched == s.length()) {
+					return i - matched + 1;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the position of the newline that has index newlines before it
+	 * in this subtree, steering by the children's newline counts the way
+	 * get() steers by rank. There must be more than index newlines.
+	 * 
+	 * @param index
+	 * 
+	 * @return int
+	 */
+	public int positionOfNewline(int index) {
+
+		int position = 0;
+		Node node = this;
+		while (true) {
+			if (index < node.left.newlines) {
+				node = node.left;
+			} else {
+				index -= node.left.newlines;
+				if (node.element == '\n') {
+					if (index == 0) {
+						return position + node.rank;
+					}
+					index--;
+				}
+				position += node.rank + 1;
+				node = node.right;
+			}
+		}
+	}
+
+	/**
+	 * Recomputes this node's hash from its children's, in O(1) time. The
+	 * hash of a string c0 c1 ... c(n-1) is c0 B^(n-1) + c1 B^(n-2) + ... +
+	 * c(n-1), modulo HASH_MODULUS, so the hash of a subtree is
+	 * hash(left) B^(size(right) + 1) + element B^size(right) + hash(right).
+	 * 
+	 * @param
+	 * 
+	 * @return
+	 */
+	public void updateHash() {
+
+		long h = mulMod(this.left.hash, HASH_BASE) + this.element;
+		h = addMod(mulMod(h, this.right.power), this.right.hash);
+		this.hash = h;
+		this.power = mulMod(mulMod(this.left.power, HASH_BASE), this.right.power);
+	}
+
+	/**
+	 * Folds the hash of the characters at positions from (inclusive) to to
+	 * (exclusive) of this subtree into acc[0], as if they were appended to
+	 * whatever acc[0] is the hash of. Whole subtrees inside the range are
+	 * taken from their stored hash, so this is O(log N).
+	 * 
+	 * @param from,
+	 *            to, acc
+	 * 
+	 * @return
+	 */
+	public void hashRange(int from, int to, long[] acc) {
+
+		if (this == NULL_NODE || from >= to) {
+			return;
+		}
+		if (from <= 0 && to >= this.size) {
+			acc[0] = addMod(mulMod(acc[0], this.power), this.hash);
+			return;
+		}
+		if (from < this.rank) {
+			this.left.hashRange(from, Math.min(to, this.rank), acc);
+		}
+		if (from <= this.rank && this.rank < to) {
+			acc[0] = addMod(mulMod(acc[0], HASH_BASE), this.element);
+		}
+		if (to > this.rank + 1) {
+			this.right.hashRange(Math.max(from - (this.rank + 1), 0), to - (this.rank + 1), acc);
+		}
+	}
+
+	/**
+	 * Returns the hash of s, the same value a tree holding s would have.
+	 * 
+	 * @param s
+	 * 
+	 * @return long
+	 */
+	public static long hashOf(CharSequence s) {
+
+		long h = 0;
+		for (int i = 0; i < s.length(); i++) {
+			h = addMod(mulMod(h, HASH_BASE), s.charAt(i));
+		}
+		return h;
+	}
+
+	// a + b mod HASH_MODULUS, for a, b already reduced.
+	static long addMod(long a, long b) {
+
+		long sum = a + b;
+		return sum >= HASH_MODULUS ? sum - HASH_MODULUS : sum;
+	}
+
+	// a * b mod HASH_MODULUS, for a, b already reduced. The 122-bit product
+	// is put together from 31-bit halves, using 2^61 = 1 to fold the high
+	// bits back in.
+	static long mulMod(long a, long b) {
+
+		long a1 = a >>> 31;
+		long a0 = a & ((1L << 31) - 1);
+		long b1 = b >>> 31;
+		long b0 = b & ((1L << 31) - 1);
+		long middle = a0 * b1 + a1 * b0;
+		long sum = ((a1 * b1) << 1) + (middle >>> 30) + ((middle & ((1L << 30) - 1)) << 31) + a0 * b0;
+		sum = (sum & HASH_MODULUS) + (sum >>> 61);
+		sum = (sum & HASH_MODULUS) + (sum >>> 61);
+		return sum >= HASH_MODULUS ? sum - HASH_MODULUS : sum;
+	}
+
+	/**
+	 * Points the parent fields of this node's children back at it. Shared
+	 * children are left alone, since other trees may be reading them.
+	 * 
+	 * @param
+	 * 
+	 * @return
+	 */
+	public void adoptChildren() {
+
+		if (this.left != NULL_NODE && !this.left.shared) {
+			this.left.parent = this;
+		}
+		if (this.right != NULL_NODE && !this.right.shared) {
+			this.right.parent = this;
+		}
 	}
 
 	/**
@@ -436,6 +958,9 @@ public class Node {
 	 */
 	public void updateNodeFields() {
 
+		// The children get their fields recomputed too
+		this.left = this.left.mutable();
+		this.right = this.right.mutable();
 		this.height = this.updateHeight();
 		this.size = this.updateSize();
 		this.rank = this.updateRank();
@@ -443,6 +968,19 @@ public class Node {
 		this.left.setNodeBalance();
 		this.right.setNodeBalance();
 		this.setNodeBalance();
+		// Rotations move grandchildren as well as children
+		this.left.adoptChildren();
+		this.right.adoptChildren();
+		this.adoptChildren();
+		this.left.updateHash();
+		this.right.updateHash();
+		this.updateHash();
+		this.left.updateNewlines();
+		this.right.updateNewlines();
+		this.updateNewlines();
+		this.left.summaryCache = null;
+		this.right.summaryCache = null;
+		this.summaryCache = null;
 	}
 
 	/**
@@ -502,6 +1040,8 @@ public class Node {
 
 		if (position < 0 || position >= this.size) {
 			throw new IndexOutOfBoundsException("Out of bounds");
+		} else if (this.shared) {
+			return this.mutable().delete(position, container);
 		}
 		// When we find the actual Position
 		if (position == this.rank) {
@@ -509,8 +1049,9 @@ public class Node {
 			// 4 cases
 			if (this.left != NULL_NODE && this.right != NULL_NODE) {
 				Node toReturn = this.right.nodeSucessor();
-				container.charRemoved = this.element;
 				this.right = this.right.delete(0, container);
+				// Deleting the successor overwrote charRemoved with its char
+				container.charRemoved = this.element;
 				this.element = toReturn.element;
 
 			} else if (this.left == NULL_NODE && this.right == NULL_NODE) {
@@ -536,119 +1077,199 @@ public class Node {
 	}
 
 	/**
-	 * Takes a tree and copies the entire tree.
+	 * Takes a tree and copies the entire tree, one new node per old node.
 	 * 
-	 * @param oldTreeNode,
-	 *            e, container
+	 * @param oldTreeNode
 	 * 
 	 * @return Node
 	 */
-	public Node createTreeCopy(Node oldTreeNode, EditTree e, Container container) {
+	public static Node copyTree(Node oldTreeNode) {
 
 		if (oldTreeNode == NULL_NODE) {
 			return NULL_NODE;
 		}
-		container.size = e.container.size;
-		this.balance = oldTreeNode.balance;
-		this.element = oldTreeNode.element;
-		this.height = oldTreeNode.height;
-		this.rank = oldTreeNode.rank;
-		this.size = oldTreeNode.size;
-		// Creates news nodes with the information copied over
-		this.left = new Node(oldTreeNode.left.element);
-		this.right = new Node(oldTreeNode.right.element);
-		// Recursive calls
-		this.left = this.left.createTreeCopy(oldTreeNode.left, e, container);
-		this.right = this.right.createTreeCopy(oldTreeNode.right, e, container);
-		return this;
+		Node node = new Node(oldTreeNode.element);
+		node.balance = oldTreeNode.balance;
+		node.height = oldTreeNode.height;
+		node.rank = oldTreeNode.rank;
+		node.size = oldTreeNode.size;
+		node.hash = oldTreeNode.hash;
+		node.power = oldTreeNode.power;
+		node.newlines = oldTreeNode.newlines;
+		// The entries are immutable and the copy holds the same characters
+		node.summaryCache = oldTreeNode.summaryCache;
+		node.left = copyTree(oldTreeNode.left);
+		node.right = copyTree(oldTreeNode.right);
+		node.adoptChildren();
+		return node;
+	}
+
+	/**
+	 * Joins two trees around a connecting node in time proportional to the
+	 * difference of their heights. Walks down the spine of the taller tree
+	 * until it finds a subtree within one level of the shorter tree, hangs
+	 * the connecting node there, and rebalances on the way back up.
+	 * 
+	 * @param leftRoot,
+	 *            connectingNode, rightRoot, container
+	 * 
+	 * @return Node
+	 */
+	public static Node join(Node leftRoot, Node connectingNode, Node rightRoot, Container container) {
+
+		// Left tree is taller, so the connecting node goes down its right spine
+		if (leftRoot.height - rightRoot.height > 1) {
+			leftRoot = leftRoot.mutable();
+			leftRoot.right = join(leftRoot.right, connectingNode, rightRoot, container);
+			leftRoot.updateNode();
+			return leftRoot.checkForRotation(container);
+		}
+		// Right tree is taller, so the connecting node goes down its left spine
+		else if (rightRoot.height - leftRoot.height > 1) {
+			rightRoot = rightRoot.mutable();
+			rightRoot.left = join(leftRoot, connectingNode, rightRoot.left, container);
+			rightRoot.updateNode();
+			return rightRoot.checkForRotation(container);
+		}
+		connectingNode = connectingNode.mutable();
+		connectingNode.left = leftRoot;
+		connectingNode.right = rightRoot;
+		connectingNode.updateNode();
+		return connectingNode;
 	}
 
 	/**
-	 * Takes two trees and merges them together making one version larger
-	 * version of the two.
+	 * Splits the tree rooted at this node so that every position before the
+	 * given one stays in the returned tree. The root of the tree holding the
+	 * remaining positions is passed back through the container.
 	 * 
-	 * @param leftTree,
-	 *            rightTree, connectingNode, checkParent, checkNode, pHeight
+	 * @param position,
 	 *            container
 	 * 
 	 * @return Node
 	 */
-	public Node concatenate(EditTree leftTree, EditTree rightTree, Node connectingNode, Node checkParent,
-			Node checkNode, int checkNodeHeight, Container container) {
-		// Determining the heights of both left and right trees
-		int heightOfLeftTree = leftTree.height();
-		int heightOfRightTree = rightTree.height();
-
-		// Height of leftTree is greater than or equal height of rightTree
-		if (heightOfLeftTree >= heightOfRightTree) {
-			if ((checkNodeHeight - heightOfRightTree) > 1) {
-				if (checkNode.balance.equals(Code.LEFT)) {
-					checkNodeHeight = checkNodeHeight - 2;
-				} else {
-					checkNodeHeight = checkNodeHeight - 1;
-				}
-				checkParent = checkNode;
-				checkNode.right = concatenate(leftTree, rightTree, connectingNode, checkParent, checkNode.right,
-						checkNodeHeight, container);
-				checkNode.updateNode();
-				checkNode.setNodeBalance();
-				return checkNode.checkForRotation(container);
-			}
-			connectingNode.left = checkNode;
-			connectingNode.right = rightTree.getRoot();
-			connectingNode.updateNode();
-			connectingNode.setNodeBalance();
-			if (checkParent != null) {
-				checkParent.right = connectingNode;
-			}
-			return connectingNode.checkForRotation(container);
-		}
-		// Height of leftTree is less than height of rightTree
-		else if (heightOfLeftTree < heightOfRightTree) {
-			if (checkNodeHeight - heightOfRightTree > 1) {
-				if (checkNode.balance.equals(Code.RIGHT)) {
-					checkNodeHeight = checkNodeHeight - 2;
-				} else {
-					checkNodeHeight = checkNodeHeight - 1;
-				}
-				checkParent = checkNode;
-				checkNode.left = concatenate(leftTree, rightTree, connectingNode, checkParent, checkNode.left,
-						checkNodeHeight, container);
-				checkNode.updateNode();
-				checkNode.setNodeBalance();
-				return checkNode.checkForRotation(container);
-			}
-			connectingNode.right = checkNode;
-			connectingNode.left = leftTree.getRoot();
-			connectingNode.updateNode();
-			connectingNode.setNodeBalance();
-			if (parent != null) {
-				parent.left = connectingNode;
-			}
-			return connectingNode.checkForRotation(container);
+	public Node split(int position, Container container) {
+
+		if (this == NULL_NODE) {
+			container.splitRoot = NULL_NODE;
+			return NULL_NODE;
+		} else if (this.shared) {
+			return this.mutable().split(position, container);
 		}
-		return checkNode;
+		// Hold on to the children since join() reuses this node as the
+		// connecting node and overwrites them
+		Node oldLeft = this.left;
+		Node oldRight = this.right;
+		if (position <= this.rank) {
+			Node leftPart = oldLeft.split(position, container);
+			container.splitRoot = join(container.splitRoot, this, oldRight, container);
+			return leftPart;
+		}
+		Node middlePart = oldRight.split(position - (this.rank + 1), container);
+		Node rightPart = container.splitRoot;
+		Node leftPart = join(oldLeft, this, middlePart, container);
+		container.splitRoot = rightPart;
+		return leftPart;
 	}
 
 	/**
-	 * Constructs a new tree based upon a string given method.
+	 * Builds a perfectly balanced tree holding the characters of chars from
+	 * start (inclusive) to end (exclusive) in O(end - start) time. Works on
+	 * indexes so no substrings are created along the way.
 	 * 
-	 * @param string
+	 * @param chars,
+	 *            start, end
 	 * 
 	 * @return Node
 	 */
-	public Node EditTree(String string) {
-		if (string.length() == 0) {
+	public static Node build(CharSequence chars, int start, int end) {
+
+		if (start >= end) {
 			return NULL_NODE;
 		}
-		int rootCharIndex = (int) Math.floor((double) (string.length() / 2));
-		this.element = string.charAt(rootCharIndex);
-		this.left = new Node();
-		this.left = this.left.EditTree(string.substring(0, rootCharIndex));
-		this.right = new Node();
-		this.right = this.right.EditTree(string.substring(rootCharIndex + 1, string.length()));
-		this.updateNode();
+		// Same middle character the String constructor picks
+		int middle = start + (end - start) / 2;
+		Node node = new Node(chars.charAt(middle));
+		node.left = build(chars, start, middle);
+		node.right = build(chars, middle + 1, end);
+		node.updateNode();
+		return node;
+	}
 
-		return this;
+	/**
+	 * Builds a perfectly balanced tree holding chars[start] through
+	 * chars[end - 1] in O(end - start) time, with the same shape as the
+	 * CharSequence version.
+	 * 
+	 * @param chars,
+	 *            start, end
+	 * 
+	 * @return Node
+	 */
+	public static Node build(char[] chars, int start, int end) {
+
+		if (start >= end) {
+			return NULL_NODE;
+		}
+		int middle = start + (end - start) / 2;
+		Node node = new Node(chars[middle]);
+		node.left = build(chars, start, middle);
+		node.right = build(chars, middle + 1, end);
+		node.updateNode();
+		return node;
+	}
+
+	/**
+	 * Builds the same tree as build(), but hands the two halves of every
+	 * range bigger than PARALLEL_BUILD_THRESHOLD to pool so they are built at
+	 * the same time. Exactly one of array and sequence should be non-null.
+	 * 
+	 * @param array,
+	 *            sequence, start, end, pool
+	 * 
+	 * @return Node
+	 */
+	public static Node buildParallel(char[] array, CharSequence sequence, int start, int end, ForkJoinPool pool) {
+
+		if (end - start < PARALLEL_BUILD_THRESHOLD) {
+			return array != null ? build(array, start, end) : build(sequence, start, end);
+		}
+		return pool.invoke(new BuildTask(array, sequence, start, end));
+	}
+
+	// Fork/join task behind buildParallel().
+	static class BuildTask extends RecursiveTask<Node> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final char[] array;
+		private final CharSequence sequence;
+		private final int start, end;
+
+		BuildTask(char[] array, CharSequence sequence, int start, int end) {
+			this.array = array;
+			this.sequence = sequence;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected Node compute() {
+
+			if (end - start < PARALLEL_BUILD_THRESHOLD) {
+				return array != null ? build(array, start, end) : build(sequence, start, end);
+			}
+			// Split around the same middle character build() would pick so
+			// the result has exactly the same shape
+			int middle = start + (end - start) / 2;
+			BuildTask leftTask = new BuildTask(array, sequence, start, middle);
+			leftTask.fork();
+			Node rightRoot = new BuildTask(array, sequence, middle + 1, end).compute();
+			Node node = new Node(array != null ? array[middle] : sequence.charAt(middle));
+			node.left = leftTask.join();
+			node.right = rightRoot;
+			node.updateNode();
+			return node;
+		}
 	}
 }
@@ -0,0 +1,136 @@
+package editortrees;
+
+// Storage for the nodes of a PooledEditTree. Instead of one object per node,
+// a node is just an int index and each of its fields is read and written
+// through the pool, so a tree of N characters is a few large blocks of
+// memory rather than N objects. Index 0 is the null node. Released nodes are
+// chained through their left field into a free list and reused before the
+// pool grows.
+//
+// Subclasses decide where the fields actually live; see ArrayNodePool and
+// OffHeapNodePool.
+
+public abstract class NodePool {
+
+	public static final int NULL_NODE = 0;
+
+	// Balance codes, matching Node.Code.
+	public static final byte SAME = 0;
+	public static final byte LEFT = 1;
+	public static final byte RIGHT = 2;
+
+	private int freeList = NULL_NODE;
+	private int nextUnused = 1;
+	private int liveCount = 0;
+
+	/**
+	 * Hands out a leaf node holding ch, reusing a released node if there is
+	 * one.
+	 *
+	 * @param ch
+	 *
+	 * @return int
+	 */
+	public int allocate(char ch) {
+
+		int node;
+		if (this.freeList != NULL_NODE) {
+			node = this.freeList;
+			this.freeList = this.left(node);
+		} else {
+			if (this.nextUnused > this.capacity()) {
+				this.grow();
+			}
+			node = this.nextUnused++;
+		}
+		this.setElement(node, ch);
+		this.setLeft(node, NULL_NODE);
+		this.setRight(node, NULL_NODE);
+		this.setRank(node, 0);
+		this.setSize(node, 1);
+		this.setHeight(node, 0);
+		this.setBalance(node, SAME);
+		this.liveCount++;
+		return node;
+	}
+
+	/**
+	 * Puts node on the free list. It must not be used again until allocate()
+	 * hands it back out.
+	 *
+	 * @param node
+	 *
+	 * @return
+	 */
+	public void release(int node) {
+
+		this.setLeft(node, this.freeList);
+		this.freeList = node;
+		this.liveCount--;
+	}
+
+	/**
+	 * Sets up the null node, which has height -1 and size 0 just like
+	 * Node.NULL_NODE. Subclasses call this once their storage exists.
+	 *
+	 * @param
+	 *
+	 * @return
+	 */
+	protected void initNullNode() {
+
+		this.setHeight(NULL_NODE, -1);
+		this.setSize(NULL_NODE, 0);
+		this.setRank(NULL_NODE, 0);
+	}
+
+	/**
+	 * @return the number of nodes handed out and not yet released
+	 */
+	public int liveCount() {
+
+		return this.liveCount;
+	}
+
+	/**
+	 * @return the number of nodes the pool can hold before growing
+	 */
+	public abstract int capacity();
+
+	/**
+	 * Makes room for more nodes. Existing node indexes stay valid.
+	 *
+	 * @param
+	 *
+	 * @return
+	 */
+	protected abstract void grow();
+
+	public abstract char element(int node);
+
+	public abstract void setElement(int node, char ch);
+
+	public abstract int left(int node);
+
+	public abstract void setLeft(int node, int child);
+
+	public abstract int right(int node);
+
+	public abstract void setRight(int node, int child);
+
+	public abstract int rank(int node);
+
+	public abstract void setRank(int node, int rank);
+
+	public abstract int size(int node);
+
+	public abstract void setSize(int node, int size);
+
+	public abstract int height(int node);
+
+	public abstract void setHeight(int node, int height);
+
+	public abstract byte balance(int node);
+
+	public abstract void setBalance(int node, byte balance);
+}
@@ -0,0 +1,157 @@
+package editortrees;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// A NodePool whose node records live in direct ByteBuffers, outside the Java
+// heap, so the garbage collector never has to scan or copy them. Records are
+// packed into fixed-size pages; growing the pool adds a page and never moves
+// existing records. The memory is returned when the pool itself is garbage
+// collected.
+
+public class OffHeapNodePool extends NodePool {
+
+	// Layout of one node record.
+	private static final int LEFT_OFFSET = 0;
+	private static final int RIGHT_OFFSET = 4;
+	private static final int RANK_OFFSET = 8;
+	private static final int SIZE_OFFSET = 12;
+	private static final int ELEMENT_OFFSET = 16;
+	private static final int HEIGHT_OFFSET = 18;
+	private static final int BALANCE_OFFSET = 19;
+	private static final int RECORD_BYTES = 20;
+
+	// 64K records, a little over 1 MB, per page.
+	private static final int PAGE_SHIFT = 16;
+	private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+	private ByteBuffer[] pages = new ByteBuffer[0];
+
+	/**
+	 * Creates an empty pool with one page of off-heap memory.
+	 *
+	 * @param
+	 *
+	 * @return none
+	 */
+	public OffHeapNodePool() {
+
+		this(1);
+	}
+
+	/**
+	 * Creates an empty pool with room for capacity nodes before it has to
+	 * allocate another page.
+	 *
+	 * @param capacity
+	 *
+	 * @return none
+	 */
+	public OffHeapNodePool(int capacity) {
+
+		while (this.capacity() < capacity) {
+			this.grow();
+		}
+		this.initNullNode();
+	}
+
+	@Override
+	public int capacity() {
+
+		return (this.pages.length << PAGE_SHIFT) - 1;
+	}
+
+	/**
+	 * Adds one page.
+	 *
+	 * @param
+	 *
+	 * @return
+	 */
+	@Override
+	protected void grow() {
+
+		this.pages = Arrays.copyOf(this.pages, this.pages.length + 1);
+		this.pages[this.pages.length - 1] = ByteBuffer.allocateDirect(RECORD_BYTES << PAGE_SHIFT)
+				.order(ByteOrder.nativeOrder());
+	}
+
+	private ByteBuffer page(int node) {
+		return this.pages[node >>> PAGE_SHIFT];
+	}
+
+	private static int offset(int node, int field) {
+		return (node & PAGE_MASK) * RECORD_BYTES + field;
+	}
+
+	@Override
+	public char element(int node) {
+		return this.page(node).getChar(offset(node, ELEMENT_OFFSET));
+	}
+
+	@Override
+	public void setElement(int node, char ch) {
+		this.page(node).putChar(offset(node, ELEMENT_OFFSET), ch);
+	}
+
+	@Override
+	public int left(int node) {
+		return this.page(node).getInt(offset(node, LEFT_OFFSET));
+	}
+
+	@Override
+	public void setLeft(int node, int child) {
+		this.page(node).putInt(offset(node, LEFT_OFFSET), child);
+	}
+
+	@Override
+	public int right(int node) {
+		return this.page(node).getInt(offset(node, RIGHT_OFFSET));
+	}
+
+	@Override
+	public void setRight(int node, int child) {
+		this.page(node).putInt(offset(node, RIGHT_OFFSET), child);
+	}
+
+	@Override
+	public int rank(int node) {
+		return this.page(node).getInt(offset(node, RANK_OFFSET));
+	}
+
+	@Override
+	public void setRank(int node, int rank) {
+		this.page(node).putInt(offset(node, RANK_OFFSET), rank);
+	}
+
+	@Override
+	public int size(int node) {
+		return this.page(node).getInt(offset(node, SIZE_OFFSET));
+	}
+
+	@Override
+	public void setSize(int node, int size) {
+		this.page(node).putInt(offset(node, SIZE_OFFSET), size);
+	}
+
+	@Override
+	public int height(int node) {
+		return this.page(node).get(offset(node, HEIGHT_OFFSET));
+	}
+
+	@Override
+	public void setHeight(int node, int height) {
+		this.page(node).put(offset(node, HEIGHT_OFFSET), (byte) height);
+	}
+
+	@Override
+	public byte balance(int node) {
+		return this.page(node).get(offset(node, BALANCE_OFFSET));
+	}
+
+	@Override
+	public void setBalance(int node, byte balance) {
+		this.page(node).put(offset(node, BALANCE_OFFSET), balance);
+	}
+}
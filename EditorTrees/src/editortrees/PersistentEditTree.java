@@ -0,0 +1,269 @@
+package editortrees;
+
+import static editortrees.Node.NULL_NODE;
+
+// An immutable height-balanced tree with rank. Each edit returns a new
+// version and leaves this one as it was. The two versions share every node
+// except the O(log N) ones on the path the edit went down, so keeping old
+// versions around (for undo, autosave or a background spellcheck) costs
+// only the nodes that actually changed.
+public final class PersistentEditTree {
+
+	private final Node root;
+
+	/**
+	 * Construct an empty tree
+	 */
+	public PersistentEditTree() {
+
+		this(NULL_NODE);
+	}
+
+	/**
+	 * Create a tree whose toString is s, in O(N) time.
+	 * 
+	 * @param s
+	 */
+	public PersistentEditTree(CharSequence s) {
+
+		this(Node.build(s, 0, s.length()));
+	}
+
+	/**
+	 * Wraps root, which must be marked shared or reachable only from here.
+	 * 
+	 * @param root
+	 */
+	PersistentEditTree(Node root) {
+
+		this.root = root;
+	}
+
+	/**
+	 * Starts an edit. The returned tree sees this version's nodes but copies
+	 * any of them before changing it.
+	 * 
+	 * @return a mutable tree with the same contents as this one
+	 */
+	private EditTree edit() {
+
+		return new EditTree(this.root.share());
+	}
+
+	/**
+	 * @return a mutable EditTree starting out with the contents of this
+	 *         version, made in O(1) time. Edits to it never affect this
+	 *         version.
+	 */
+	public EditTree toEditTree() {
+
+		return this.edit();
+	}
+
+	/**
+	 * @param ch
+	 *            character to add to the end
+	 * @return a new version with ch added at the end
+	 */
+	public PersistentEditTree add(char ch) {
+
+		EditTree tree = this.edit();
+		tree.add(ch);
+		return new PersistentEditTree(tree.getRoot());
+	}
+
+	/**
+	 * @param ch
+	 *            character to add
+	 * @param position
+	 *            in order position of the new character
+	 * @return a new version with ch added at position
+	 * @throws IndexOutOfBoundsException
+	 *             if position is negative or too large for this tree
+	 */
+	public PersistentEditTree add(char ch, int position) throws IndexOutOfBoundsException {
+
+		if (position < 0 || position > this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		EditTree tree = this.edit();
+		tree.add(ch, position);
+		return new PersistentEditTree(tree.getRoot());
+	}
+
+	/**
+	 * @param pos
+	 *            position the first character of s is inserted at
+	 * @param s
+	 *            characters to insert
+	 * @return a new version with s inserted at pos
+	 * @throws IndexOutOfBoundsException
+	 *             if pos is negative or greater than the size of this tree
+	 */
+	public PersistentEditTree insert(int pos, CharSequence s) throws IndexOutOfBoundsException {
+
+		EditTree tree = this.edit();
+		tree.insert(pos, s);
+		return new PersistentEditTree(tree.getRoot());
+	}
+
+	/**
+	 * @param position
+	 *            position of the character to delete
+	 * @return a new version without the character at position
+	 * @throws IndexOutOfBoundsException
+	 */
+	public PersistentEditTree delete(int position) throws IndexOutOfBoundsException {
+
+		if (position < 0 || position >= this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		EditTree tree = this.edit();
+		tree.delete(position);
+		return new PersistentEditTree(tree.getRoot());
+	}
+
+	/**
+	 * @param start
+	 *            position of beginning of string to delete
+	 * @param length
+	 *            length of string to delete
+	 * @return a new version without the given range
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for this
+	 *             tree.
+	 */
+	public PersistentEditTree delete(int start, int length) throws IndexOutOfBoundsException {
+
+		EditTree tree = this.edit();
+		tree.delete(start, length);
+		return new PersistentEditTree(tree.getRoot());
+	}
+
+	/**
+	 * @param other
+	 *            version whose contents go after this one's
+	 * @return a new version holding this version followed by other. Neither
+	 *         this nor other changes, and other may even be this.
+	 */
+	public PersistentEditTree concatenate(PersistentEditTree other) {
+
+		EditTree tree = this.edit();
+		tree.concatenate(other.edit());
+		return new PersistentEditTree(tree.getRoot());
+	}
+
+	/**
+	 * @param pos
+	 *            where to split this tree
+	 * @return two new versions: the positions before pos, and the positions
+	 *         from pos on
+	 * @throws IndexOutOfBoundsException
+	 */
+	public PersistentEditTree[] split(int pos) throws IndexOutOfBoundsException {
+
+		EditTree tree = this.edit();
+		EditTree rest = tree.split(pos);
+		return new PersistentEditTree[] { new PersistentEditTree(tree.getRoot()),
+				new PersistentEditTree(rest.getRoot()) };
+	}
+
+	/**
+	 * @param position
+	 *            position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char get(int position) throws IndexOutOfBoundsException {
+
+		if (position < 0 || position >= this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		return this.root.get(position);
+	}
+
+	/**
+	 * @param position
+	 *            location of the beginning of the string to retrieve
+	 * @param length
+	 *            length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException
+	 */
+	public String get(int position, int length) throws IndexOutOfBoundsException {
+
+		if (position < 0 || length < 0 || position + length > this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		char[] chars = new char[length];
+		this.root.copyRange(position, position + length, chars, 0);
+		return new String(chars);
+	}
+
+	/**
+	 * @param s
+	 *            the string to look for
+	 * @return the position in this version of the first occurrence of s; -1
+	 *         if s does not occur
+	 */
+	public int find(String s) {
+
+		return this.find(s, 0);
+	}
+
+	/**
+	 * Searches this version's nodes in place. Nothing is copied or marked
+	 * shared, so any number of threads can search the same version.
+	 * 
+	 * @param s
+	 *            the string to search for
+	 * @param pos
+	 *            the position in this version to begin the search
+	 * @return the position of the first occurrence of s that does not occur
+	 *         before position pos; -1 if s does not occur
+	 */
+	public int find(String s, int pos) {
+
+		return this.root.find(s, pos);
+	}
+
+	/**
+	 * @return the number of characters in this version
+	 */
+	public int size() {
+
+		return this.root.size;
+	}
+
+	/**
+	 * @return the height of this version
+	 */
+	public int height() {
+
+		return this.root.height;
+	}
+
+	/**
+	 * Hands every character of this version to action, in order.
+	 * 
+	 * @param action
+	 */
+	public void forEach(CharConsumer action) {
+
+		this.root.forEach(action);
+	}
+
+	@Override
+	public String toString() {
+
+		return new String(this.root.inOrder(new char[this.root.size]));
+	}
+
+	/**
+	 * @return The root of this version.
+	 */
+	public Node getRoot() {
+
+		return this.root;
+	}
+}
@@ -0,0 +1,210 @@
+package editortrees;
+
+import static editortrees.EditTreeTestSupport.ALPHABET;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.PersistentEditTree} and the other ways trees
+ * can share nodes: {@link editortrees.EditTree#snapshot()} and
+ * {@link editortrees.EditTree#EditTree(EditTree, boolean)}.
+ */
+public class PersistentEditTreeTest {
+
+	private void collect(Node node, IdentityHashMap<Node, Boolean> nodes) {
+		if (node != Node.NULL_NODE) {
+			nodes.put(node, true);
+			collect(node.left, nodes);
+			collect(node.right, nodes);
+		}
+	}
+
+	// Number of nodes of after that are not also nodes of before.
+	private int newNodes(Node before, Node after) {
+		IdentityHashMap<Node, Boolean> old = new IdentityHashMap<Node, Boolean>();
+		collect(before, old);
+		IdentityHashMap<Node, Boolean> all = new IdentityHashMap<Node, Boolean>();
+		collect(after, all);
+		int count = 0;
+		for (Node node : all.keySet()) {
+			if (!old.containsKey(node)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Test
+	public void testOldVersionsUnchanged() {
+		PersistentEditTree v0 = new PersistentEditTree("abc");
+		PersistentEditTree v1 = v0.add('d');
+		PersistentEditTree v2 = v1.add('!', 0);
+		PersistentEditTree v3 = v2.delete(2);
+		PersistentEditTree v4 = v3.insert(1, "xyz");
+		PersistentEditTree v5 = v4.delete(0, 3);
+		assertEquals("abc", v0.toString());
+		assertEquals("abcd", v1.toString());
+		assertEquals("!abcd", v2.toString());
+		assertEquals("!acd", v3.toString());
+		assertEquals("!xyzacd", v4.toString());
+		assertEquals("zacd", v5.toString());
+
+		PersistentEditTree[] halves = v4.split(3);
+		assertEquals("!xy", halves[0].toString());
+		assertEquals("zacd", halves[1].toString());
+		assertEquals("!xyzacd", v4.toString());
+
+		PersistentEditTree twice = v1.concatenate(v1);
+		assertEquals("abcdabcd", twice.toString());
+		assertEquals("abcd", v1.toString());
+		assertEquals("abcdabcd!", twice.add('!').toString());
+	}
+
+	@Test
+	public void testEditsCopyOnlyOnePath() {
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			s.append(ALPHABET.charAt(i % 26));
+		}
+		PersistentEditTree before = new PersistentEditTree(s);
+		PersistentEditTree after = before.add('!', 54321);
+		// The new path, plus the few nodes that rotations touch
+		assertTrue(newNodes(before.getRoot(), after.getRoot()) <= 3 * (before.height() + 1));
+		assertEquals('!', after.get(54321));
+		assertEquals(s.toString(), before.toString());
+
+		PersistentEditTree removed = after.delete(100, 50000);
+		assertTrue(newNodes(after.getRoot(), removed.getRoot()) <= 6 * (after.height() + 1));
+		assertEquals(100001, after.size());
+		assertEquals(50001, removed.size());
+	}
+
+	@Test
+	public void testSnapshotOfLiveTree() {
+		EditTree live = new EditTree("hello world");
+		PersistentEditTree snapshot = live.snapshot();
+		assertSame(live.getRoot(), snapshot.getRoot());
+
+		live.add('!');
+		live.delete(0);
+		live.add('H', 0);
+		assertEquals("Hello world!", live.toString());
+		assertEquals("hello world", snapshot.toString());
+
+		EditTree fromSnapshot = snapshot.toEditTree();
+		fromSnapshot.delete(5, 6);
+		assertEquals("hello", fromSnapshot.toString());
+		assertEquals("hello world", snapshot.toString());
+		assertEquals("Hello world!", live.toString());
+	}
+
+	@Test
+	public void testCopyOnWriteConstructor() {
+		EditTree original = new EditTree("abcdefghijklmnop");
+		EditTree copy = new EditTree(original, true);
+		assertSame(original.getRoot(), copy.getRoot());
+		assertEquals(original.size(), copy.size());
+
+		copy.add('!', 3);
+		assertEquals("abc!defghijklmnop", copy.toString());
+		assertEquals("abcdefghijklmnop", original.toString());
+		assertTrue(newNodes(original.getRoot(), copy.getRoot()) <= 3 * (copy.height() + 1));
+
+		original.delete(0);
+		assertEquals("bcdefghijklmnop", original.toString());
+		assertEquals("abc!defghijklmnop", copy.toString());
+
+		EditTree copyOfCopy = new EditTree(copy, true);
+		copy.concatenate(new EditTree("qrs"));
+		EditTree rest = copyOfCopy.split(4);
+		assertEquals("abc!defghijklmnopqrs", copy.toString());
+		assertEquals("abc!", copyOfCopy.toString());
+		assertEquals("defghijklmnop", rest.toString());
+		assertEquals("bcdefghijklmnop", original.toString());
+	}
+
+	@Test
+	public void testRandomCopyOnWriteTrees() {
+		Random random = new Random(230);
+		ArrayList<EditTree> trees = new ArrayList<EditTree>();
+		ArrayList<StringBuilder> expected = new ArrayList<StringBuilder>();
+		trees.add(new EditTree());
+		expected.add(new StringBuilder());
+		for (int i = 0; i < 3000; i++) {
+			int which = random.nextInt(trees.size());
+			EditTree tree = trees.get(which);
+			StringBuilder s = expected.get(which);
+			if (random.nextInt(10) == 0) {
+				trees.add(new EditTree(tree, true));
+				expected.add(new StringBuilder(s));
+			} else if (s.length() == 0 || random.nextBoolean()) {
+				char ch = ALPHABET.charAt(random.nextInt(26));
+				int pos = random.nextInt(s.length() + 1);
+				tree.add(ch, pos);
+				s.insert(pos, ch);
+			} else {
+				int pos = random.nextInt(s.length());
+				assertEquals(s.charAt(pos), tree.delete(pos));
+				s.deleteCharAt(pos);
+			}
+		}
+		for (int i = 0; i < trees.size(); i++) {
+			assertEquals(expected.get(i).toString(), trees.get(i).toString());
+		}
+	}
+
+	@Test
+	public void testRandomVersions() {
+		Random random = new Random(230);
+		ArrayList<PersistentEditTree> versions = new ArrayList<PersistentEditTree>();
+		ArrayList<String> expected = new ArrayList<String>();
+		versions.add(new PersistentEditTree());
+		expected.add("");
+		for (int i = 0; i < 3000; i++) {
+			int which = random.nextInt(versions.size());
+			PersistentEditTree version = versions.get(which);
+			StringBuilder s = new StringBuilder(expected.get(which));
+			PersistentEditTree next;
+			if (s.length() == 0 || random.nextBoolean()) {
+				char ch = ALPHABET.charAt(random.nextInt(26));
+				int pos = random.nextInt(s.length() + 1);
+				next = version.add(ch, pos);
+				s.insert(pos, ch);
+			} else {
+				int pos = random.nextInt(s.length());
+				next = version.delete(pos);
+				s.deleteCharAt(pos);
+			}
+			versions.add(next);
+			expected.add(s.toString());
+		}
+		for (int i = 0; i < versions.size(); i++) {
+			assertEquals(expected.get(i), versions.get(i).toString());
+			assertEquals(expected.get(i).length(), versions.get(i).size());
+		}
+	}
+
+	@Test
+	public void testFindOnlyReads() {
+		PersistentEditTree v = new PersistentEditTree("abcabcabd, abcabd");
+		EditTree expected = new EditTree("abcabcabd, abcabd");
+		for (String s : new String[] { "abcabd", "abd", "d, a", "x", "" }) {
+			for (int pos = -1; pos <= v.size() + 1; pos++) {
+				assertEquals(expected.find(s, pos), v.find(s, pos));
+			}
+		}
+		// Readers on other threads may search the same version, so nothing
+		// may be marked shared or otherwise written on the way
+		assertFalse(v.getRoot().shared);
+		assertEquals(3, new ConcurrentEditTree(v).find("abcabd"));
+		assertFalse(v.getRoot().shared);
+	}
+}
@@ -0,0 +1,688 @@
+package editortrees;
+
+import static editortrees.NodePool.LEFT;
+import static editortrees.NodePool.NULL_NODE;
+import static editortrees.NodePool.RIGHT;
+import static editortrees.NodePool.SAME;
+
+// A height-balanced binary tree with rank that keeps its nodes in a NodePool
+// instead of Node objects, either on the heap or off it. It makes exactly the
+// same rotations as EditTree, so both trees have the same shape, ranks and
+// balance codes after the same edits; only the storage is different.
+public class PooledEditTree {
+
+	private final NodePool pool;
+	private int root = NULL_NODE;
+	private int rotationCount;
+	private char charRemoved;
+	private int splitRoot = NULL_NODE;
+
+	/**
+	 * Construct an empty tree whose nodes live in an ArrayNodePool
+	 */
+	public PooledEditTree() {
+
+		this(new ArrayNodePool());
+	}
+
+	/**
+	 * Construct an empty tree whose nodes live in pool, for example an
+	 * OffHeapNodePool for documents that should stay out of the Java heap.
+	 * The pool must not be shared with another tree, other than the ones
+	 * split() makes from this one.
+	 *
+	 * @param pool
+	 */
+	public PooledEditTree(NodePool pool) {
+
+		this.pool = pool;
+	}
+
+	/**
+	 * Create a tree whose toString is s, in O(N) time, with its nodes in an
+	 * ArrayNodePool sized for s up front.
+	 *
+	 * @param s
+	 */
+	public PooledEditTree(CharSequence s) {
+
+		this(s, new ArrayNodePool(s.length()));
+	}
+
+	/**
+	 * Create a tree whose toString is s, in O(N) time, with its nodes in
+	 * pool. The pool must be empty and must not be shared with another tree.
+	 *
+	 * @param s
+	 * @param pool
+	 */
+	public PooledEditTree(CharSequence s, NodePool pool) {
+
+		this.pool = pool;
+		this.root = this.build(s, 0, s.length());
+	}
+
+	/**
+	 * Make this tree be a copy of e, with all new nodes in a new
+	 * ArrayNodePool, but the same shape and contents.
+	 *
+	 * @param e
+	 */
+	public PooledEditTree(PooledEditTree e) {
+
+		this(e, new ArrayNodePool(e.size()));
+	}
+
+	/**
+	 * Make this tree be a copy of e, with all new nodes in pool, but the same
+	 * shape and contents. The pool must not be shared with another tree.
+	 *
+	 * @param e
+	 * @param pool
+	 */
+	public PooledEditTree(PooledEditTree e, NodePool pool) {
+
+		this.pool = pool;
+		this.root = this.copyTree(e.pool, e.root);
+	}
+
+	/**
+	 * @return the pool holding this tree's nodes
+	 */
+	public NodePool getPool() {
+
+		return this.pool;
+	}
+
+	/**
+	 * @return number of rotations since this tree was created, a double
+	 *         rotation counting as two.
+	 */
+	public int totalRotationCount() {
+
+		return this.rotationCount;
+	}
+
+	/**
+	 * @return the height of this tree
+	 */
+	public int height() {
+
+		return this.pool.height(this.root);
+	}
+
+	/**
+	 * @return the number of characters in this tree
+	 */
+	public int size() {
+
+		return this.pool.size(this.root);
+	}
+
+	/**
+	 * @param ch
+	 *            character to add to the end of this tree.
+	 */
+	public void add(char ch) {
+
+		this.root = this.add(this.root, ch);
+	}
+
+	/**
+	 * @param ch
+	 *            character to add
+	 * @param position
+	 *            character added in this inorder position
+	 * @throws IndexOutOfBoundsException
+	 *             if pos is negative or too large for this tree
+	 */
+	public void add(char ch, int position) throws IndexOutOfBoundsException {
+
+		if (position < 0 || position > this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		if (this.root == NULL_NODE) {
+			this.root = this.pool.allocate(ch);
+		} else {
+			this.root = this.add(this.root, ch, position);
+		}
+	}
+
+	/**
+	 * @param position
+	 *            position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char get(int position) throws IndexOutOfBoundsException {
+
+		if (position < 0 || position >= this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		int node = this.root;
+		while (position != this.pool.rank(node)) {
+			if (position < this.pool.rank(node)) {
+				node = this.pool.left(node);
+			} else {
+				position -= this.pool.rank(node) + 1;
+				node = this.pool.right(node);
+			}
+		}
+		return this.pool.element(node);
+	}
+
+	/**
+	 * @param position
+	 *            position of character to delete from this tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char delete(int position) throws IndexOutOfBoundsException {
+
+		if (position < 0 || position >= this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		this.root = this.deleteNode(this.root, position);
+		return this.charRemoved;
+	}
+
+	/**
+	 * @param position
+	 *            location of the beginning of the string to retrieve
+	 * @param length
+	 *            length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException
+	 *             unless both pos and pos+length-1 are legitimate indexes
+	 *             within this tree.
+	 */
+	public String get(int position, int length) throws IndexOutOfBoundsException {
+
+		if (position < 0 || length < 0 || position + length > this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		char[] chars = new char[length];
+		this.copyRange(this.root, position, position + length, chars, 0);
+		return new String(chars);
+	}
+
+	/**
+	 * Append the contents of the other tree to this one, in O(log N) time
+	 * when other keeps its nodes in the same pool as this tree, as the trees
+	 * made by split() do. Nodes in any other pool are copied over first.
+	 * Other is made empty.
+	 *
+	 * @param other
+	 * @throws IllegalArgumentException
+	 *             if this == other
+	 */
+	public void concatenate(PooledEditTree other) throws IllegalArgumentException {
+
+		if (this == other) {
+			throw new IllegalArgumentException("Cannot concatenate the same tree");
+		} else if (other.size() == 0) {
+			return;
+		}
+		// Borrow the connecting node from the shorter tree, like EditTree
+		int connectingNode = NULL_NODE;
+		if (this.size() > 0) {
+			if (this.height() < other.height()) {
+				connectingNode = this.pool.allocate(this.delete(this.size() - 1));
+			} else {
+				connectingNode = this.pool.allocate(other.delete(0));
+			}
+		}
+		int rightRoot = other.root;
+		if (other.pool != this.pool) {
+			rightRoot = this.copyTree(other.pool, other.root);
+			other.releaseTree(other.root);
+		}
+		other.root = NULL_NODE;
+		if (connectingNode == NULL_NODE) {
+			this.root = rightRoot;
+		} else {
+			this.root = this.join(this.root, connectingNode, rightRoot);
+		}
+	}
+
+	/**
+	 * @param pos
+	 *            where to split this tree
+	 * @return a new tree, in the same pool, containing all of the elements of
+	 *         this tree whose positions are >= pos. Their nodes are removed
+	 *         from this tree.
+	 * @throws IndexOutOfBoundsException
+	 */
+	public PooledEditTree split(int pos) throws IndexOutOfBoundsException {
+
+		if (pos < 0 || pos > this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		PooledEditTree rightTree = new PooledEditTree(this.pool);
+		this.root = this.split(this.root, pos);
+		rightTree.root = this.splitRoot;
+		this.splitRoot = NULL_NODE;
+		return rightTree;
+	}
+
+	/**
+	 * @param start
+	 *            position of beginning of string to delete
+	 * @param length
+	 *            length of string to delete
+	 * @return a tree, in the same pool, containing the deleted string
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for this
+	 *             tree.
+	 */
+	public PooledEditTree delete(int start, int length) throws IndexOutOfBoundsException {
+
+		if (start < 0 || length < 0 || start + length > this.size()) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		PooledEditTree removed = this.split(start);
+		PooledEditTree rest = removed.split(length);
+		this.concatenate(rest);
+		return removed;
+	}
+
+	/**
+	 * Releases all of this tree's nodes back to its pool and makes it empty.
+	 * Nodes are not garbage collected, so call this on trees that split() or
+	 * delete() hand back and that are no longer needed.
+	 */
+	public void clear() {
+
+		this.releaseTree(this.root);
+		this.root = NULL_NODE;
+	}
+
+	/**
+	 * @param s
+	 *            the string to look for
+	 * @return the position in this tree of the first occurrence of s; -1 if s
+	 *         does not occur
+	 */
+	public int find(String s) {
+
+		return this.find(s, 0);
+	}
+
+	/**
+	 * Knuth-Morris-Pratt over a single in-order walk starting at pos, just
+	 * like EditTree.find(). An empty s is found at pos and a negative pos is
+	 * treated as 0.
+	 *
+	 * @param s
+	 *            the string to search for
+	 * @param pos
+	 *            the position in the tree to begin the search
+	 * @return the position in this tree of the first occurrence of s that does
+	 *         not occur before position pos; -1 if s does not occur
+	 */
+	public int find(String s, int pos) {
+
+		int size = this.size();
+		pos = Math.max(pos, 0);
+		if (s.length() == 0) {
+			return Math.min(pos, size);
+		} else if (size - pos < s.length()) {
+			return -1;
+		}
+		int[] fallback = new int[s.length()];
+		for (int j = 1, k = 0; j < s.length(); j++) {
+			while (k > 0 && s.charAt(j) != s.charAt(k)) {
+				k = fallback[k - 1];
+			}
+			if (s.charAt(j) == s.charAt(k)) {
+				k++;
+			}
+			fallback[j] = k;
+		}
+		// The stack holds the nodes at or after the walk whose left subtrees
+		// are done, starting with the path down to pos
+		int[] stack = new int[this.height() + 1];
+		int top = 0;
+		int node = this.root;
+		int offset = pos;
+		while (node != NULL_NODE) {
+			int rank = this.pool.rank(node);
+			if (offset <= rank) {
+				stack[top++] = node;
+				node = this.pool.left(node);
+			} else {
+				offset -= rank + 1;
+				node = this.pool.right(node);
+			}
+		}
+		int matched = 0;
+		for (int i = pos; i < size; i++) {
+			node = stack[--top];
+			char ch = this.pool.element(node);
+			for (int next = this.pool.right(node); next != NULL_NODE; next = this.pool.left(next)) {
+				stack[top++] = next;
+			}
+			while (matched > 0 && ch != s.charAt(matched)) {
+				matched = fallback[matched - 1];
+			}
+			if (ch == s.charAt(matched)) {
+				matched++;
+				if (matched == s.length()) {
+					return i - matched + 1;
+				}
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public String toString() {
+
+		char[] chars = new char[this.size()];
+		// Iterative in-order walk; the stack never holds more than height + 1
+		int[] stack = new int[this.height() + 1];
+		int top = 0;
+		int offset = 0;
+		int node = this.root;
+		while (node != NULL_NODE || top > 0) {
+			while (node != NULL_NODE) {
+				stack[top++] = node;
+				node = this.pool.left(node);
+			}
+			node = stack[--top];
+			chars[offset++] = this.pool.element(node);
+			node = this.pool.right(node);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * @return The string of elements, ranks, and balance codes, given in a
+	 *         pre-order traversal of the tree, in the same format as
+	 *         EditTree.toDebugString().
+	 */
+	public String toDebugString() {
+
+		StringBuilder string = new StringBuilder("[");
+		int[] stack = new int[this.height() + 2];
+		int top = 0;
+		if (this.root != NULL_NODE) {
+			stack[top++] = this.root;
+		}
+		while (top > 0) {
+			int node = stack[--top];
+			if (string.length() > 1) {
+				string.append(", ");
+			}
+			string.append(this.pool.element(node)).append(this.pool.rank(node));
+			byte balance = this.pool.balance(node);
+			string.append(balance == LEFT ? "/" : balance == RIGHT ? "\\" : "=");
+			if (this.pool.right(node) != NULL_NODE) {
+				stack[top++] = this.pool.right(node);
+			}
+			if (this.pool.left(node) != NULL_NODE) {
+				stack[top++] = this.pool.left(node);
+			}
+		}
+		return string.append("]").toString();
+	}
+
+	// The methods below mirror the ones with the same names in Node, with
+	// the node passed as an index instead of being this.
+
+	private int build(CharSequence chars, int start, int end) {
+
+		if (start >= end) {
+			return NULL_NODE;
+		}
+		int middle = start + (end - start) / 2;
+		int node = this.pool.allocate(chars.charAt(middle));
+		this.pool.setLeft(node, this.build(chars, start, middle));
+		this.pool.setRight(node, this.build(chars, middle + 1, end));
+		this.updateNode(node);
+		return node;
+	}
+
+	private int add(int node, char ch) {
+
+		if (node == NULL_NODE) {
+			return this.pool.allocate(ch);
+		}
+		int right = this.add(this.pool.right(node), ch);
+		this.pool.setRight(node, right);
+		this.pool.setHeight(node, Math.max(this.pool.height(this.pool.left(node)), this.pool.height(right)) + 1);
+		this.pool.setSize(node, this.pool.size(node) + 1);
+		this.setNodeBalance(node);
+		return this.checkForRotation(node);
+	}
+
+	private int add(int node, char ch, int position) {
+
+		int rank = this.pool.rank(node);
+		if (position <= rank) {
+			int left = this.pool.left(node);
+			left = left == NULL_NODE ? this.pool.allocate(ch) : this.add(left, ch, position);
+			this.pool.setLeft(node, left);
+		} else {
+			int right = this.pool.right(node);
+			right = right == NULL_NODE ? this.pool.allocate(ch) : this.add(right, ch, position - (rank + 1));
+			this.pool.setRight(node, right);
+		}
+		this.updateNode(node);
+		return this.checkForRotation(node);
+	}
+
+	// Node.delete(), renamed so that it does not clash with delete(start,
+	// length).
+	private int deleteNode(int node, int position) {
+
+		int rank = this.pool.rank(node);
+		if (position == rank) {
+			int left = this.pool.left(node);
+			int right = this.pool.right(node);
+			char removed = this.pool.element(node);
+			if (left != NULL_NODE && right != NULL_NODE) {
+				// Replace with the successor, as the tests for EditTree expect
+				int successor = right;
+				while (this.pool.left(successor) != NULL_NODE) {
+					successor = this.pool.left(successor);
+				}
+				this.pool.setElement(node, this.pool.element(successor));
+				this.pool.setRight(node, this.deleteNode(right, 0));
+				this.charRemoved = removed;
+			} else {
+				this.charRemoved = removed;
+				this.pool.release(node);
+				return left != NULL_NODE ? left : right;
+			}
+		} else if (position < rank) {
+			this.pool.setLeft(node, this.deleteNode(this.pool.left(node), position));
+		} else {
+			this.pool.setRight(node, this.deleteNode(this.pool.right(node), position - (rank + 1)));
+		}
+		this.updateNode(node);
+		return this.checkForRotation(node);
+	}
+
+	private int copyTree(NodePool from, int node) {
+
+		if (node == NULL_NODE) {
+			return NULL_NODE;
+		}
+		int copy = this.pool.allocate(from.element(node));
+		this.pool.setLeft(copy, this.copyTree(from, from.left(node)));
+		this.pool.setRight(copy, this.copyTree(from, from.right(node)));
+		this.pool.setRank(copy, from.rank(node));
+		this.pool.setSize(copy, from.size(node));
+		this.pool.setHeight(copy, from.height(node));
+		this.pool.setBalance(copy, from.balance(node));
+		return copy;
+	}
+
+	private void releaseTree(int node) {
+
+		if (node == NULL_NODE) {
+			return;
+		}
+		int left = this.pool.left(node);
+		int right = this.pool.right(node);
+		this.pool.release(node);
+		this.releaseTree(left);
+		this.releaseTree(right);
+	}
+
+	private int copyRange(int node, int from, int to, char[] dest, int offset) {
+
+		if (node == NULL_NODE || from >= to) {
+			return offset;
+		}
+		int rank = this.pool.rank(node);
+		if (from < rank) {
+			offset = this.copyRange(this.pool.left(node), from, Math.min(to, rank), dest, offset);
+		}
+		if (from <= rank && rank < to) {
+			dest[offset++] = this.pool.element(node);
+		}
+		if (to > rank + 1) {
+			offset = this.copyRange(this.pool.right(node), Math.max(from - (rank + 1), 0), to - (rank + 1), dest,
+					offset);
+		}
+		return offset;
+	}
+
+	private int join(int leftRoot, int connectingNode, int rightRoot) {
+
+		int leftHeight = this.pool.height(leftRoot);
+		int rightHeight = this.pool.height(rightRoot);
+		if (leftHeight - rightHeight > 1) {
+			this.pool.setRight(leftRoot, this.join(this.pool.right(leftRoot), connectingNode, rightRoot));
+			this.updateNode(leftRoot);
+			return this.checkForRotation(leftRoot);
+		} else if (rightHeight - leftHeight > 1) {
+			this.pool.setLeft(rightRoot, this.join(leftRoot, connectingNode, this.pool.left(rightRoot)));
+			this.updateNode(rightRoot);
+			return this.checkForRotation(rightRoot);
+		}
+		this.pool.setLeft(connectingNode, leftRoot);
+		this.pool.setRight(connectingNode, rightRoot);
+		this.updateNode(connectingNode);
+		return connectingNode;
+	}
+
+	// Hands the right part back through splitRoot, like Node.split() does
+	// through the container.
+	private int split(int node, int position) {
+
+		if (node == NULL_NODE) {
+			this.splitRoot = NULL_NODE;
+			return NULL_NODE;
+		}
+		int oldLeft = this.pool.left(node);
+		int oldRight = this.pool.right(node);
+		int rank = this.pool.rank(node);
+		if (position <= rank) {
+			int leftPart = this.split(oldLeft, position);
+			this.splitRoot = this.join(this.splitRoot, node, oldRight);
+			return leftPart;
+		}
+		int middlePart = this.split(oldRight, position - (rank + 1));
+		int rightPart = this.splitRoot;
+		int leftPart = this.join(oldLeft, node, middlePart);
+		this.splitRoot = rightPart;
+		return leftPart;
+	}
+
+	private void setNodeBalance(int node) {
+
+		int difference = this.pool.height(this.pool.right(node)) - this.pool.height(this.pool.left(node));
+		if (difference == -1) {
+			this.pool.setBalance(node, LEFT);
+		} else if (difference == 0) {
+			this.pool.setBalance(node, SAME);
+		} else if (difference == 1) {
+			this.pool.setBalance(node, RIGHT);
+		}
+	}
+
+	private void updateNode(int node) {
+
+		int left = this.pool.left(node);
+		int right = this.pool.right(node);
+		this.pool.setHeight(node, Math.max(this.pool.height(left), this.pool.height(right)) + 1);
+		this.pool.setSize(node, this.pool.size(left) + this.pool.size(right) + 1);
+		this.pool.setRank(node, this.pool.size(left));
+		this.setNodeBalance(node);
+	}
+
+	private int checkForRotation(int node) {
+
+		int left = this.pool.left(node);
+		int right = this.pool.right(node);
+		int difference = this.pool.height(right) - this.pool.height(left);
+		if (difference < -1 && this.pool.balance(left) != RIGHT) {
+			return this.rotateSingleRight(node);
+		} else if (difference > 1 && this.pool.balance(right) != LEFT) {
+			return this.rotateSingleLeft(node);
+		} else if (difference < -1) {
+			return this.rotateDoubleRight(node);
+		} else if (difference > 1) {
+			return this.rotateDoubleLeft(node);
+		}
+		return node;
+	}
+
+	private int rotateSingleLeft(int node) {
+
+		int newRoot = this.pool.right(node);
+		this.pool.setRight(node, this.pool.left(newRoot));
+		this.pool.setLeft(newRoot, node);
+		this.updateNodeAndChildren(newRoot);
+		this.rotationCount++;
+		return newRoot;
+	}
+
+	private int rotateSingleRight(int node) {
+
+		int newRoot = this.pool.left(node);
+		this.pool.setLeft(node, this.pool.right(newRoot));
+		this.pool.setRight(newRoot, node);
+		this.updateNodeAndChildren(newRoot);
+		this.rotationCount++;
+		return newRoot;
+	}
+
+	private int rotateDoubleRight(int node) {
+
+		int left = this.pool.left(node);
+		int newRoot = this.pool.right(left);
+		this.pool.setRight(left, this.pool.left(newRoot));
+		this.pool.setLeft(node, this.pool.right(newRoot));
+		this.pool.setLeft(newRoot, left);
+		this.pool.setRight(newRoot, node);
+		this.updateNodeAndChildren(newRoot);
+		this.rotationCount += 2;
+		return newRoot;
+	}
+
+	private int rotateDoubleLeft(int node) {
+
+		int right = this.pool.right(node);
+		int newRoot = this.pool.left(right);
+		this.pool.setLeft(right, this.pool.right(newRoot));
+		this.pool.setRight(node, this.pool.left(newRoot));
+		this.pool.setRight(newRoot, right);
+		this.pool.setLeft(newRoot, node);
+		this.updateNodeAndChildren(newRoot);
+		this.rotationCount += 2;
+		return newRoot;
+	}
+
+	// Same as Node.updateNodeFields(): after a rotation only the new root
+	// and its two children have stale fields.
+	private void updateNodeAndChildren(int node) {
+
+		this.updateNode(this.pool.left(node));
+		this.updateNode(this.pool.right(node));
+		this.updateNode(node);
+	}
+}
@@ -0,0 +1,273 @@
+package editortrees;
+
+import static editortrees.EditTreeTestSupport.makeString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.PooledEditTree}. Since it is meant to make the
+ * same rotations as EditTree, most tests run the same edits on both and
+ * compare their debug strings.
+ */
+public class PooledEditTreeTest {
+
+	private void assertSameTree(EditTree expected, PooledEditTree actual) {
+		assertEquals(expected.toDebugString(), actual.toDebugString());
+		assertEquals(expected.toString(), actual.toString());
+		assertEquals(expected.height(), actual.height());
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected.totalRotationCount(), actual.totalRotationCount());
+	}
+
+	@Test
+	public void testEmpty() {
+		PooledEditTree t = new PooledEditTree();
+		assertEquals("", t.toString());
+		assertEquals("[]", t.toDebugString());
+		assertEquals(-1, t.height());
+		assertEquals(0, t.size());
+		try {
+			t.get(0);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			t.add('a', 1);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testDebugString() {
+		PooledEditTree t = new PooledEditTree();
+		t.add('a');
+		t.add('b');
+		t.add('c');
+		assertEquals("[b1=, a0=, c0=]", t.toDebugString());
+		t.add('d');
+		assertEquals("[b1\\, a0=, c0\\, d0=]", t.toDebugString());
+		assertEquals(1, t.totalRotationCount());
+	}
+
+	@Test
+	public void testAddManyInc() {
+		PooledEditTree t = new PooledEditTree();
+		for (int k = 0; k < 1000000; k++) {
+			t.add((char) k);
+		}
+		assertEquals(19, t.height());
+		assertEquals(1000000, t.size());
+		assertEquals(999980, t.totalRotationCount());
+	}
+
+	@Test
+	public void testMatchesEditTree() {
+		assertMatchesEditTree(new PooledEditTree());
+	}
+
+	@Test
+	public void testOffHeapMatchesEditTree() {
+		assertMatchesEditTree(new PooledEditTree(new OffHeapNodePool()));
+	}
+
+	@Test
+	public void testOffHeapAddManyInc() {
+		// Spans several pages of the pool
+		PooledEditTree t = new PooledEditTree(new OffHeapNodePool());
+		for (int k = 0; k < 1000000; k++) {
+			t.add((char) k);
+		}
+		assertEquals(19, t.height());
+		assertEquals(1000000, t.size());
+		assertEquals(999980, t.totalRotationCount());
+		for (int k = 0; k < 1000000; k += 997) {
+			assertEquals((char) k, t.get(k));
+		}
+	}
+
+	@Test
+	public void testOffHeapFromString() {
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 200000; i++) {
+			s.append((char) ('a' + i % 26));
+		}
+		PooledEditTree t = new PooledEditTree(s, new OffHeapNodePool(s.length()));
+		assertEquals(s.toString(), t.toString());
+		assertEquals(new EditTree(s.toString()).height(), t.height());
+		assertEquals(200000, t.getPool().liveCount());
+	}
+
+	private void assertMatchesEditTree(PooledEditTree actual) {
+		Random random = new Random(230);
+		EditTree expected = new EditTree();
+		for (int i = 0; i < 5000; i++) {
+			if (random.nextInt(3) > 0 || expected.size() == 0) {
+				char ch = (char) ('a' + random.nextInt(26));
+				if (random.nextBoolean()) {
+					expected.add(ch);
+					actual.add(ch);
+				} else {
+					int pos = random.nextInt(expected.size() + 1);
+					expected.add(ch, pos);
+					actual.add(ch, pos);
+				}
+			} else {
+				int pos = random.nextInt(expected.size());
+				assertEquals(expected.delete(pos), actual.delete(pos));
+			}
+			assertSameTree(expected, actual);
+		}
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i), actual.get(i));
+		}
+	}
+
+	@Test
+	public void testMilestone3MatchesEditTree() {
+		assertMilestone3MatchesEditTree(new ArrayNodePool());
+	}
+
+	@Test
+	public void testOffHeapMilestone3MatchesEditTree() {
+		assertMilestone3MatchesEditTree(new OffHeapNodePool());
+	}
+
+	@Test
+	public void testOffHeapCopyAndConcatenate() {
+		PooledEditTree t = new PooledEditTree("abcdefgh", new OffHeapNodePool());
+		PooledEditTree copy = new PooledEditTree(t, new OffHeapNodePool());
+		assertEquals(t.toDebugString(), copy.toDebugString());
+		t.concatenate(copy);
+		EditTree expected = new EditTree("abcdefgh");
+		expected.concatenate(new EditTree("abcdefgh"));
+		assertEquals(expected.toDebugString(), t.toDebugString());
+		assertEquals(0, copy.getPool().liveCount());
+		assertEquals(8, t.find("a", 1));
+	}
+
+	@Test
+	public void testCopyConstructor() {
+		PooledEditTree t = new PooledEditTree("the quick brown fox");
+		t.add('!', 3);
+		PooledEditTree copy = new PooledEditTree(t);
+		assertEquals(t.toDebugString(), copy.toDebugString());
+		assertEquals(t.size(), copy.getPool().liveCount());
+		copy.delete(0);
+		assertEquals("the! quick brown fox", t.toString());
+		assertEquals("he! quick brown fox", copy.toString());
+	}
+
+	@Test
+	public void testConcatenateAcrossPools() {
+		PooledEditTree t = new PooledEditTree("abcdefgh");
+		PooledEditTree other = new PooledEditTree("ijklmnopqrstuvwxyz", new ArrayNodePool());
+		EditTree expected = new EditTree("abcdefgh");
+		expected.concatenate(new EditTree("ijklmnopqrstuvwxyz"));
+		t.concatenate(other);
+		assertEquals(expected.toDebugString(), t.toDebugString());
+		assertEquals("", other.toString());
+		assertEquals(0, other.getPool().liveCount());
+		assertEquals(26, t.getPool().liveCount());
+		try {
+			t.concatenate(t);
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testFind() {
+		PooledEditTree t = new PooledEditTree("abcabcabd, abcabd");
+		EditTree expected = new EditTree("abcabcabd, abcabd");
+		String[] patterns = { "abcabd", "abd", "a", "d, a", "x", "", "abcabcabd, abcabd!" };
+		for (String s : patterns) {
+			for (int pos = -1; pos <= t.size() + 1; pos++) {
+				assertEquals(expected.find(s, pos), t.find(s, pos));
+			}
+		}
+		assertEquals(3, t.find("abcabd"));
+	}
+
+	// Runs the same Milestone 3 operations on an EditTree and on a
+	// PooledEditTree in pool, checking that they stay identical.
+	private void assertMilestone3MatchesEditTree(NodePool pool) {
+		Random random = new Random(311);
+		EditTree expected = new EditTree();
+		PooledEditTree actual = new PooledEditTree(pool);
+		for (int i = 0; i < 3000; i++) {
+			int op = random.nextInt(6);
+			int size = expected.size();
+			if (op == 0 || size == 0) {
+				String s = makeString(random.nextInt(40) + 1);
+				int pos = random.nextInt(size + 1);
+				EditTree expectedRight = expected.split(pos);
+				PooledEditTree actualRight = actual.split(pos);
+				expected.concatenate(new EditTree(s));
+				expected.concatenate(expectedRight);
+				actual.concatenate(new PooledEditTree(s, pool));
+				actual.concatenate(actualRight);
+			} else if (op == 1) {
+				int start = random.nextInt(size);
+				int length = random.nextInt(Math.min(30, size - start) + 1);
+				PooledEditTree removed = actual.delete(start, length);
+				assertEquals(expected.delete(start, length).toDebugString(), removed.toDebugString());
+				removed.clear();
+			} else if (op == 2) {
+				int pos = random.nextInt(size + 1);
+				EditTree expectedRight = expected.split(pos);
+				PooledEditTree actualRight = actual.split(pos);
+				assertEquals(expected.toDebugString(), actual.toDebugString());
+				assertEquals(expectedRight.toDebugString(), actualRight.toDebugString());
+				expectedRight.concatenate(expected);
+				actualRight.concatenate(actual);
+				expected = expectedRight;
+				actual = actualRight;
+			} else if (op == 3) {
+				int start = random.nextInt(size);
+				int length = random.nextInt(size - start + 1);
+				assertEquals(expected.get(start, length), actual.get(start, length));
+			} else if (op == 4) {
+				int start = random.nextInt(size);
+				String s = expected.get(start, Math.min(random.nextInt(5) + 1, size - start));
+				int pos = random.nextInt(size);
+				assertEquals(expected.find(s, pos), actual.find(s, pos));
+			} else {
+				char ch = (char) ('a' + random.nextInt(26));
+				int pos = random.nextInt(size + 1);
+				expected.add(ch, pos);
+				actual.add(ch, pos);
+			}
+			assertEquals(expected.toDebugString(), actual.toDebugString());
+			assertEquals(expected.height(), actual.height());
+			assertEquals(expected.size(), actual.size());
+		}
+		assertEquals(expected.toString(), actual.toString());
+		assertEquals(expected.size(), pool.liveCount());
+		PooledEditTree copy = new PooledEditTree(actual);
+		assertEquals(actual.toDebugString(), copy.toDebugString());
+	}
+
+	@Test
+	public void testFreedNodesAreReused() {
+		PooledEditTree t = new PooledEditTree("abcdefghijklmnop");
+		assertSameTree(new EditTree("abcdefghijklmnop"), t);
+		t.add('x', 8);
+		t.delete(8);
+		int capacity = t.getPool().capacity();
+		for (int i = 0; i < 1000; i++) {
+			t.add('x', 8);
+			assertEquals('x', t.delete(8));
+		}
+		assertEquals(16, t.getPool().liveCount());
+		assertEquals(capacity, t.getPool().capacity());
+		assertEquals("abcdefghijklmnop", t.toString());
+	}
+}
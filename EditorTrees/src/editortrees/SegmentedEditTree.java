@@ -0,0 +1,516 @@
+package editortrees;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// A document split into segments, each its own EditTree with its own lock,
+// so edits to far-apart parts of a large document run in parallel instead
+// of all going through one root. A Fenwick tree over the segment sizes
+// finds the segment holding a position in O(log S) for S segments.
+//
+// Segments that grow past twice the target size or shrink below a quarter
+// of it are split or merged lazily, by the first edit to finish after they
+// cross the line. That is the only time the segment list itself changes, so
+// it is the only time an edit waits on edits to other segments.
+//
+// A position is resolved against the sizes of the segments in front of it
+// when the edit starts. Edits to different segments are not ordered with
+// respect to each other, so a writer that needs its positions to account
+// for everybody else's edits must coordinate with them itself.
+public class SegmentedEditTree {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 4096;
+
+	private static final class Segment {
+
+		final ReentrantLock lock = new ReentrantLock();
+		EditTree tree;
+
+		Segment(EditTree tree) {
+			this.tree = tree;
+		}
+	}
+
+	private final int segmentSize;
+	// Read-locked by every edit and read, write-locked while segments are
+	// split or merged.
+	private final ReentrantReadWriteLock structure = new ReentrantReadWriteLock();
+	private final AtomicBoolean unbalanced = new AtomicBoolean();
+	private ArrayList<Segment> segments;
+	// Fenwick tree over the segment sizes, 1-based.
+	private AtomicIntegerArray index;
+
+	/**
+	 * Construct an empty tree with segments of DEFAULT_SEGMENT_SIZE.
+	 */
+	public SegmentedEditTree() {
+
+		this(DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Construct an empty tree whose segments hold about segmentSize
+	 * characters.
+	 * 
+	 * @param segmentSize
+	 * @throws IllegalArgumentException
+	 *             if segmentSize is less than 4
+	 */
+	public SegmentedEditTree(int segmentSize) {
+
+		this("", segmentSize);
+	}
+
+	/**
+	 * Create a tree whose toString is s, in O(N) time, with segments of
+	 * segmentSize characters.
+	 * 
+	 * @param s
+	 * @param segmentSize
+	 * @throws IllegalArgumentException
+	 *             if segmentSize is less than 4
+	 */
+	public SegmentedEditTree(CharSequence s, int segmentSize) {
+
+		if (segmentSize < 4) {
+			throw new IllegalArgumentException("Segments must hold at least 4 characters");
+		}
+		this.segmentSize = segmentSize;
+		this.segments = new ArrayList<Segment>();
+		for (int start = 0; start < s.length(); start += segmentSize) {
+			int end = Math.min(start + segmentSize, s.length());
+			this.segments.add(new Segment(EditTree.of(s.subSequence(start, end))));
+		}
+		if (this.segments.isEmpty()) {
+			this.segments.add(new Segment(new EditTree()));
+		}
+		this.rebuildIndex();
+	}
+
+	/**
+	 * Wraps tree, which nothing else may reach, splitting it into segments
+	 * in O(S log N) time for S segments instead of copying it.
+	 * 
+	 * @param tree
+	 * @param segmentSize
+	 */
+	private SegmentedEditTree(EditTree tree, int segmentSize) {
+
+		this.segmentSize = segmentSize;
+		this.segments = new ArrayList<Segment>();
+		this.segments.add(new Segment(tree));
+		// Not published yet, so there is nobody to take the write lock from
+		this.rebalanceSegments();
+	}
+
+	/**
+	 * @return the number of segments the document is currently split into
+	 */
+	public int segmentCount() {
+
+		this.structure.readLock().lock();
+		try {
+			return this.segments.size();
+		} finally {
+			this.structure.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the number of characters in this tree
+	 */
+	public int size() {
+
+		this.structure.readLock().lock();
+		try {
+			return this.prefix(this.segments.size());
+		} finally {
+			this.structure.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param ch
+	 *            character to add to the end of this tree.
+	 */
+	public void add(char ch) {
+
+		this.structure.readLock().lock();
+		try {
+			int last = this.segments.size() - 1;
+			Segment segment = this.segments.get(last);
+			segment.lock.lock();
+			try {
+				segment.tree.add(ch);
+				this.resized(last, segment, 1);
+			} finally {
+				segment.lock.unlock();
+			}
+		} finally {
+			this.structure.readLock().unlock();
+		}
+		this.rebalanceIfNeeded();
+	}
+
+	/**
+	 * @param ch
+	 *            character to add
+	 * @param position
+	 *            character added in this inorder position
+	 * @throws IndexOutOfBoundsException
+	 *             if pos is negative or too large for this tree
+	 */
+	public void add(char ch, int position) throws IndexOutOfBoundsException {
+
+		this.insert(position, String.valueOf(ch));
+	}
+
+	/**
+	 * @param pos
+	 *            position the first character of s is inserted at
+	 * @param s
+	 *            characters to insert
+	 * @throws IndexOutOfBoundsException
+	 *             if pos is negative or greater than the size of this tree
+	 */
+	public void insert(int pos, CharSequence s) throws IndexOutOfBoundsException {
+
+		this.structure.readLock().lock();
+		try {
+			int[] offset = new int[1];
+			int i = this.lockSegment(pos, true, offset);
+			Segment segment = this.segments.get(i);
+			try {
+				segment.tree.insert(offset[0], s);
+				this.resized(i, segment, s.length());
+			} finally {
+				segment.lock.unlock();
+			}
+		} finally {
+			this.structure.readLock().unlock();
+		}
+		this.rebalanceIfNeeded();
+	}
+
+	/**
+	 * @param position
+	 *            position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char get(int position) throws IndexOutOfBoundsException {
+
+		this.structure.readLock().lock();
+		try {
+			int[] offset = new int[1];
+			Segment segment = this.segments.get(this.lockSegment(position, false, offset));
+			try {
+				return segment.tree.get(offset[0]);
+			} finally {
+				segment.lock.unlock();
+			}
+		} finally {
+			this.structure.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param position
+	 *            position of character to delete from this tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char delete(int position) throws IndexOutOfBoundsException {
+
+		char deleted;
+		this.structure.readLock().lock();
+		try {
+			int[] offset = new int[1];
+			int i = this.lockSegment(position, false, offset);
+			Segment segment = this.segments.get(i);
+			try {
+				deleted = segment.tree.delete(offset[0]);
+				this.resized(i, segment, -1);
+			} finally {
+				segment.lock.unlock();
+			}
+		} finally {
+			this.structure.readLock().unlock();
+		}
+		this.rebalanceIfNeeded();
+		return deleted;
+	}
+
+	/**
+	 * Deletes a range. A range inside one segment only locks that segment;
+	 * one that crosses segments locks the whole tree.
+	 * 
+	 * @param start
+	 *            position of beginning of string to delete
+	 * @param length
+	 *            length of string to delete
+	 * @return a tree containing the deleted string, with segments of the
+	 *         same size as this tree's
+	 * @throws IndexOutOfBoundsException
+	 *             unless both start and start+length-1 are in range for this
+	 *             tree.
+	 */
+	public SegmentedEditTree delete(int start, int length) throws IndexOutOfBoundsException {
+
+		if (length < 0) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		EditTree removed = null;
+		this.structure.readLock().lock();
+		try {
+			int[] offset = new int[1];
+			int i = this.lockSegment(start, true, offset);
+			Segment segment = this.segments.get(i);
+			try {
+				if (offset[0] + length <= segment.tree.size()) {
+					removed = segment.tree.delete(offset[0], length);
+					this.resized(i, segment, -length);
+				}
+			} finally {
+				segment.lock.unlock();
+			}
+		} finally {
+			this.structure.readLock().unlock();
+		}
+		if (removed == null) {
+			this.structure.writeLock().lock();
+			try {
+				if (start + length > this.prefix(this.segments.size())) {
+					throw new IndexOutOfBoundsException("Out of bounds");
+				}
+				// Join just the segments the range crosses
+				int first = Math.min(this.find(start), this.segments.size() - 1);
+				int offset = start - this.prefix(first);
+				EditTree joined = this.segments.get(first).tree;
+				int last = first;
+				while (offset + length > joined.size()) {
+					joined.concatenate(this.segments.get(++last).tree);
+				}
+				removed = joined.delete(offset, length);
+				this.segments.subList(first + 1, last + 1).clear();
+				this.rebalanceSegments();
+			} finally {
+				this.structure.writeLock().unlock();
+			}
+		}
+		this.rebalanceIfNeeded();
+		return new SegmentedEditTree(removed, this.segmentSize);
+	}
+
+	/**
+	 * @param position
+	 *            location of the beginning of the string to retrieve
+	 * @param length
+	 *            length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException
+	 *             unless both pos and pos+length-1 are legitimate indexes
+	 *             within this tree.
+	 */
+	public String get(int position, int length) throws IndexOutOfBoundsException {
+
+		if (length < 0) {
+			throw new IndexOutOfBoundsException("Out of bounds");
+		}
+		StringBuilder result = new StringBuilder(length);
+		this.structure.readLock().lock();
+		try {
+			int[] offset = new int[1];
+			int i = this.lockSegment(position, true, offset);
+			// Segments are always locked in ascending order, so this cannot
+			// deadlock with another reader
+			int first = i;
+			try {
+				while (true) {
+					EditTree tree = this.segments.get(i).tree;
+					int count = Math.min(length - result.length(), tree.size() - offset[0]);
+					result.append(tree.get(offset[0], count));
+					if (result.length() == length) {
+						break;
+					}
+					if (++i == this.segments.size()) {
+						throw new IndexOutOfBoundsException("Out of bounds");
+					}
+					this.segments.get(i).lock.lock();
+					offset[0] = 0;
+				}
+			} finally {
+				for (int j = first; j <= i && j < this.segments.size(); j++) {
+					this.segments.get(j).lock.unlock();
+				}
+			}
+		} finally {
+			this.structure.readLock().unlock();
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Splits segments that have grown too large and merges ones that have
+	 * become too small. Edits do this on their own when needed; calling it
+	 * directly only makes sense before a burst of reads.
+	 */
+	public void rebalance() {
+
+		this.structure.writeLock().lock();
+		try {
+			this.rebalanceSegments();
+		} finally {
+			this.structure.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+
+		StringBuilder result = new StringBuilder();
+		this.structure.readLock().lock();
+		try {
+			for (Segment segment : this.segments) {
+				segment.lock.lock();
+			}
+			try {
+				for (Segment segment : this.segments) {
+					result.append(segment.tree.toString());
+				}
+			} finally {
+				for (Segment segment : this.segments) {
+					segment.lock.unlock();
+				}
+			}
+		} finally {
+			this.structure.readLock().unlock();
+		}
+		return result.toString();
+	}
+
+	// Finds and locks the segment holding position, storing the position
+	// within that segment in offset[0]. With atEnd the position may be just
+	// past the end of a segment. Must be called with the read lock held.
+	private int lockSegment(int position, boolean atEnd, int[] offset) {
+
+		while (true) {
+			int total = this.prefix(this.segments.size());
+			if (position < 0 || position > total || (!atEnd && position == total)) {
+				throw new IndexOutOfBoundsException("Out of bounds");
+			}
+			int i = Math.min(this.find(position), this.segments.size() - 1);
+			Segment segment = this.segments.get(i);
+			segment.lock.lock();
+			// Another segment may have changed size since find() ran
+			offset[0] = position - this.prefix(i);
+			int size = segment.tree.size();
+			if (offset[0] >= 0 && (offset[0] < size || (atEnd && offset[0] == size))) {
+				return i;
+			}
+			segment.lock.unlock();
+		}
+	}
+
+	// Number of segments whose characters all come before position, found
+	// by descending the Fenwick tree.
+	private int find(int position) {
+
+		int n = this.segments.size();
+		int i = 0;
+		for (int step = Integer.highestOneBit(n); step > 0; step >>= 1) {
+			if (i + step <= n && this.index.get(i + step) <= position) {
+				i += step;
+				position -= this.index.get(i);
+			}
+		}
+		return i;
+	}
+
+	// Total size of the first count segments.
+	private int prefix(int count) {
+
+		int sum = 0;
+		for (int i = count; i > 0; i -= i & -i) {
+			sum += this.index.get(i);
+		}
+		return sum;
+	}
+
+	// Records that segment i changed size by delta. Called with the
+	// segment's lock held.
+	private void resized(int i, Segment segment, int delta) {
+
+		for (int j = i + 1; j < this.index.length(); j += j & -j) {
+			this.index.addAndGet(j, delta);
+		}
+		int size = segment.tree.size();
+		if (size > 2 * this.segmentSize || (size < this.segmentSize / 4 && this.segments.size() > 1)) {
+			this.unbalanced.set(true);
+		}
+	}
+
+	private void rebalanceIfNeeded() {
+
+		if (this.unbalanced.compareAndSet(true, false)) {
+			this.rebalance();
+		}
+	}
+
+	// Must be called with the write lock held.
+	private void rebalanceSegments() {
+
+		this.unbalanced.set(false);
+		ArrayList<Segment> balanced = new ArrayList<Segment>();
+		EditTree pending = null;
+		for (Segment segment : this.segments) {
+			EditTree tree = segment.tree;
+			if (pending != null) {
+				pending.concatenate(tree);
+				tree = pending;
+				pending = null;
+			}
+			while (tree.size() > 2 * this.segmentSize) {
+				EditTree rest = tree.split(this.segmentSize);
+				balanced.add(new Segment(tree));
+				tree = rest;
+			}
+			if (tree.size() < this.segmentSize / 4) {
+				pending = tree;
+			} else {
+				balanced.add(new Segment(tree));
+			}
+		}
+		if (pending != null) {
+			if (balanced.isEmpty()) {
+				balanced.add(new Segment(pending));
+			} else {
+				Segment last = balanced.get(balanced.size() - 1);
+				last.tree.concatenate(pending);
+				if (last.tree.size() > 2 * this.segmentSize) {
+					EditTree rest = last.tree.split(last.tree.size() / 2);
+					balanced.add(new Segment(rest));
+				}
+			}
+		}
+		this.segments = balanced;
+		this.rebuildIndex();
+	}
+
+	private void rebuildIndex() {
+
+		int n = this.segments.size();
+		int[] sums = new int[n + 1];
+		for (int i = 1; i <= n; i++) {
+			sums[i] += this.segments.get(i - 1).tree.size();
+			int parent = i + (i & -i);
+			if (parent <= n) {
+				sums[parent] += sums[i];
+			}
+		}
+		this.index = new AtomicIntegerArray(sums);
+	}
+}
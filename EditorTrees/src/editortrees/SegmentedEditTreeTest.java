@@ -0,0 +1,169 @@
+package editortrees;
+
+import static editortrees.EditTreeTestSupport.ALPHABET;
+import static editortrees.EditTreeTestSupport.makeString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.SegmentedEditTree}.
+ */
+public class SegmentedEditTreeTest {
+
+	@Test
+	public void testBuild() {
+		SegmentedEditTree t = new SegmentedEditTree(makeString(100), 16);
+		assertEquals(7, t.segmentCount());
+		assertEquals(makeString(100), t.toString());
+		assertEquals(100, t.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(ALPHABET.charAt(i % 26), t.get(i));
+		}
+		assertEquals(makeString(100).substring(10, 60), t.get(10, 50));
+		assertEquals("", t.get(100, 0));
+		assertEquals("", new SegmentedEditTree().toString());
+	}
+
+	@Test
+	public void testBounds() {
+		SegmentedEditTree t = new SegmentedEditTree(makeString(40), 8);
+		try {
+			t.get(40);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			t.add('x', 41);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			t.get(30, 11);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			t.delete(35, 6);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		assertEquals(makeString(40), t.toString());
+	}
+
+	@Test
+	public void testDeleteAcrossSegments() {
+		SegmentedEditTree t = new SegmentedEditTree(makeString(100), 10);
+		SegmentedEditTree removed = t.delete(5, 50);
+		assertEquals(makeString(100).substring(0, 5) + makeString(100).substring(55), t.toString());
+		assertEquals(makeString(100).substring(5, 55), removed.toString());
+		// The removed range is split into segments like any other tree
+		assertTrue(removed.segmentCount() > 1);
+		removed.add('!', 50);
+		assertEquals(makeString(100).substring(5, 55) + "!", removed.toString());
+		String rest = t.toString();
+		assertEquals(rest.substring(3, 7), t.delete(3, 4).toString());
+		assertEquals(rest.substring(0, 3) + rest.substring(7), t.toString());
+		t.delete(0, 46);
+		assertEquals("", t.toString());
+		assertEquals(1, t.segmentCount());
+		t.add('a');
+		assertEquals("a", t.toString());
+	}
+
+	@Test
+	public void testRandomEditsMatchStringBuilder() {
+		Random random = new Random(16);
+		SegmentedEditTree t = new SegmentedEditTree(8);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			int op = random.nextInt(10);
+			if (op < 4 || expected.length() == 0) {
+				int pos = random.nextInt(expected.length() + 1);
+				char ch = ALPHABET.charAt(random.nextInt(26));
+				t.add(ch, pos);
+				expected.insert(pos, ch);
+			} else if (op < 6) {
+				int pos = random.nextInt(expected.length() + 1);
+				String s = makeString(random.nextInt(20));
+				t.insert(pos, s);
+				expected.insert(pos, s);
+			} else if (op < 8) {
+				int pos = random.nextInt(expected.length());
+				assertEquals(expected.charAt(pos), t.delete(pos));
+				expected.deleteCharAt(pos);
+			} else {
+				int start = random.nextInt(expected.length());
+				int length = random.nextInt(Math.min(30, expected.length() - start) + 1);
+				assertEquals(expected.substring(start, start + length), t.delete(start, length).toString());
+				expected.delete(start, start + length);
+			}
+			assertEquals(expected.length(), t.size());
+		}
+		assertEquals(expected.toString(), t.toString());
+		t.rebalance();
+		assertEquals(expected.toString(), t.toString());
+		// After rebalancing every segment holds between 2 and 16 characters
+		assertTrue(t.segmentCount() >= expected.length() / 16);
+		assertTrue(t.segmentCount() <= expected.length() / 2 + 1);
+	}
+
+	@Test
+	public void testConcurrentEdits() throws InterruptedException {
+		final int threads = 4;
+		final int edits = 5000;
+		final SegmentedEditTree t = new SegmentedEditTree(makeString(20000), 64);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] writers = new Thread[threads];
+		for (int w = 0; w < threads; w++) {
+			final char digit = (char) ('0' + w);
+			final Random random = new Random(w);
+			writers[w] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < edits; i++) {
+							t.add(digit, random.nextInt(t.size() + 1));
+							if (i % 2 == 0) {
+								t.delete(random.nextInt(20000));
+							}
+							if (i % 100 == 0) {
+								t.toString();
+							}
+						}
+					} catch (Throwable e) {
+						failure.set(e);
+					}
+				}
+			};
+		}
+		for (Thread writer : writers) {
+			writer.start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		assertEquals(null, failure.get());
+		int expectedSize = 20000 + threads * edits - threads * edits / 2;
+		assertEquals(expectedSize, t.size());
+		String s = t.toString();
+		assertEquals(expectedSize, s.length());
+		int digits = 0;
+		for (int i = 0; i < s.length(); i++) {
+			assertEquals(s.charAt(i), t.get(i));
+			if (Character.isDigit(s.charAt(i))) {
+				digits++;
+			}
+		}
+		assertTrue(digits <= threads * edits);
+	}
+}
@@ -0,0 +1,32 @@
+package editortrees;
+
+// A value computed over a run of characters that can be put together from
+// the values of its pieces, such as a line count, a word count or the
+// widest line. Register one with EditTree.register() before asking for it:
+// the tree then keeps its value for every subtree, so asking again after an
+// edit only recomputes the O(log N) subtrees the edit changed.
+//
+// combine() must be associative and identity() must be its identity, so
+// that how the tree happens to be shaped never changes the answer. Values
+// are kept per instance, so register one instance and keep using it.
+public interface Summary<S> {
+
+	/**
+	 * @return the value of an empty run of characters
+	 */
+	S identity();
+
+	/**
+	 * @param left
+	 * @param right
+	 * @return the value of a run made of the run left summarizes followed by
+	 *         the run right summarizes
+	 */
+	S combine(S left, S right);
+
+	/**
+	 * @param ch
+	 * @return the value of a run holding just ch
+	 */
+	S leaf(char ch);
+}
@@ -0,0 +1,200 @@
+package editortrees;
+
+import static editortrees.Node.NULL_NODE;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+// A ConcurrentEditTree whose versions are numbered and can be pinned. Jobs
+// such as indexing or autosave pin the current version, read it for as long
+// as they like while edits go on, and release it when they are done. Every
+// pinned version stays reachable from here; once its last pin is released
+// nothing refers to the nodes only it used, and the garbage collector takes
+// them back.
+//
+// Edits and reads are ConcurrentEditTree's; this class only adds the pins.
+public class VersionedEditTree extends ConcurrentEditTree {
+
+	// A pinned version and how many handles still pin it.
+	private static final class Retained {
+
+		final PersistentEditTree tree;
+		int pins;
+
+		Retained(PersistentEditTree tree) {
+			this.tree = tree;
+		}
+	}
+
+	/**
+	 * A pin on one version of the tree. The version can be read through
+	 * tree() until release() is called, which must happen exactly once.
+	 */
+	public final class Version implements AutoCloseable {
+
+		private final long number;
+		// Cleared by the one release() that wins, so a second release or a
+		// racing one can never unpin twice
+		private final AtomicReference<PersistentEditTree> tree;
+
+		Version(long number, PersistentEditTree tree) {
+			this.number = number;
+			this.tree = new AtomicReference<PersistentEditTree>(tree);
+		}
+
+		/**
+		 * @return the number of this version; every published edit adds one.
+		 */
+		public long number() {
+
+			return this.number;
+		}
+
+		/**
+		 * @return the pinned contents
+		 * @throws IllegalStateException
+		 *             if this version has been released
+		 */
+		public PersistentEditTree tree() {
+
+			PersistentEditTree tree = this.tree.get();
+			if (tree == null) {
+				throw new IllegalStateException("Version already released");
+			}
+			return tree;
+		}
+
+		/**
+		 * Gives up this pin. The version's nodes are reclaimed once no other
+		 * pin and no later version uses them.
+		 * 
+		 * @throws IllegalStateException
+		 *             if this version has already been released
+		 */
+		public void release() {
+
+			if (this.tree.getAndSet(null) == null) {
+				throw new IllegalStateException("Version already released");
+			}
+			VersionedEditTree.this.unpin(this.number);
+		}
+
+		@Override
+		public void close() {
+
+			this.release();
+		}
+	}
+
+	// Pinned versions by number; guarded by itself.
+	private final Map<Long, Retained> pinned = new HashMap<Long, Retained>();
+
+	/**
+	 * Construct an empty tree; its first version is number 0.
+	 */
+	public VersionedEditTree() {
+
+		this(new PersistentEditTree());
+	}
+
+	/**
+	 * Construct a tree whose version 0 is initial.
+	 * 
+	 * @param initial
+	 */
+	public VersionedEditTree(PersistentEditTree initial) {
+
+		super(initial);
+	}
+
+	/**
+	 * @return the current version, without pinning it
+	 */
+	public PersistentEditTree current() {
+
+		return this.snapshot();
+	}
+
+	/**
+	 * @return the number of the current version
+	 */
+	public long currentVersion() {
+
+		return this.head().number;
+	}
+
+	/**
+	 * Pins the current version. It stays readable, and is counted as
+	 * retained, until the returned handle is released.
+	 * 
+	 * @return a handle on the current version
+	 */
+	public Version pin() {
+
+		Head current = this.head();
+		synchronized (this.pinned) {
+			Retained retained = this.pinned.get(current.number);
+			if (retained == null) {
+				retained = new Retained(current.tree);
+				this.pinned.put(current.number, retained);
+			}
+			retained.pins++;
+		}
+		return new Version(current.number, current.tree);
+	}
+
+	private void unpin(long number) {
+
+		synchronized (this.pinned) {
+			Retained retained = this.pinned.get(number);
+			if (--retained.pins == 0) {
+				this.pinned.remove(number);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of versions being kept: every pinned version plus
+	 *         the current one.
+	 */
+	public int retainedVersionCount() {
+
+		Head current = this.head();
+		synchronized (this.pinned) {
+			return this.pinned.size() + (this.pinned.containsKey(current.number) ? 0 : 1);
+		}
+	}
+
+	/**
+	 * Counts the distinct nodes used by the retained versions. Nodes shared
+	 * between versions are counted once, so this is what the versions
+	 * actually cost. It takes time proportional to the answer.
+	 * 
+	 * @return the number of nodes reachable from the retained versions
+	 */
+	public int retainedNodeCount() {
+
+		ArrayList<Node> roots = new ArrayList<Node>();
+		roots.add(this.snapshot().getRoot());
+		synchronized (this.pinned) {
+			for (Retained retained : this.pinned.values()) {
+				roots.add(retained.tree.getRoot());
+			}
+		}
+		IdentityHashMap<Node, Boolean> seen = new IdentityHashMap<Node, Boolean>();
+		ArrayList<Node> stack = new ArrayList<Node>(roots);
+		while (!stack.isEmpty()) {
+			Node node = stack.remove(stack.size() - 1);
+			// A node seen before was reached from another version, along
+			// with everything below it
+			if (node != NULL_NODE && seen.put(node, Boolean.TRUE) == null) {
+				stack.add(node.left);
+				stack.add(node.right);
+			}
+		}
+		return seen.size();
+	}
+}
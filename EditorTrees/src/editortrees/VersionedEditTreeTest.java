@@ -0,0 +1,154 @@
+package editortrees;
+
+import static editortrees.EditTreeTestSupport.makeString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.VersionedEditTree}.
+ */
+public class VersionedEditTreeTest {
+
+	@Test
+	public void testVersionNumbers() {
+		VersionedEditTree t = new VersionedEditTree();
+		assertEquals(0, t.currentVersion());
+		t.add('a');
+		t.insert(1, "bcd");
+		t.add('x', 0);
+		assertEquals(3, t.currentVersion());
+		assertEquals('x', t.delete(0));
+		t.delete(1, 2);
+		assertEquals(5, t.currentVersion());
+		assertEquals("ad", t.toString());
+	}
+
+	@Test
+	public void testPinnedVersionSurvivesEdits() {
+		VersionedEditTree t = new VersionedEditTree(new PersistentEditTree("abcdefgh"));
+		VersionedEditTree.Version pinned = t.pin();
+		t.delete(0, 4);
+		t.insert(0, "1234");
+		assertEquals("1234efgh", t.toString());
+		assertEquals("abcdefgh", pinned.tree().toString());
+		assertEquals(0, pinned.number());
+		pinned.release();
+		try {
+			pinned.tree();
+			fail("Did not throw IllegalStateException");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testRetainedCounts() {
+		VersionedEditTree t = new VersionedEditTree(new PersistentEditTree(makeString(1000)));
+		assertEquals(1, t.retainedVersionCount());
+		assertEquals(1000, t.retainedNodeCount());
+
+		// Pinning the current version costs nothing until it is edited
+		VersionedEditTree.Version first = t.pin();
+		VersionedEditTree.Version again = t.pin();
+		assertEquals(1, t.retainedVersionCount());
+		assertEquals(1000, t.retainedNodeCount());
+
+		// An edit copies one path, so the two versions share all the rest
+		t.add('z', 500);
+		assertEquals(2, t.retainedVersionCount());
+		int retained = t.retainedNodeCount();
+		assertTrue(retained > 1001);
+		assertTrue(retained <= 1001 + 3 * 11);
+
+		VersionedEditTree.Version second = t.pin();
+		t.delete(10);
+		assertEquals(3, t.retainedVersionCount());
+
+		// The first version is kept until both of its pins are gone
+		first.release();
+		assertEquals(3, t.retainedVersionCount());
+		again.close();
+		assertEquals(2, t.retainedVersionCount());
+		second.release();
+		assertEquals(1, t.retainedVersionCount());
+		assertEquals(1000, t.retainedNodeCount());
+	}
+
+	@Test
+	public void testReleaseTwice() {
+		VersionedEditTree t = new VersionedEditTree();
+		VersionedEditTree.Version v = t.pin();
+		v.release();
+		try {
+			v.release();
+			fail("Did not throw IllegalStateException");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals(1, t.retainedVersionCount());
+	}
+
+	@Test
+	public void testRacingReleases() throws InterruptedException {
+		final VersionedEditTree t = new VersionedEditTree(new PersistentEditTree("abc"));
+		for (int round = 0; round < 200; round++) {
+			final VersionedEditTree.Version v = t.pin();
+			VersionedEditTree.Version other = t.pin();
+			t.add('d');
+			final AtomicInteger released = new AtomicInteger();
+			final AtomicInteger refused = new AtomicInteger();
+			Thread[] threads = new Thread[4];
+			for (int i = 0; i < threads.length; i++) {
+				threads[i] = new Thread() {
+					@Override
+					public void run() {
+						try {
+							v.release();
+							released.incrementAndGet();
+						} catch (IllegalStateException e) {
+							refused.incrementAndGet();
+						}
+					}
+				};
+				threads[i].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			assertEquals(1, released.get());
+			assertEquals(threads.length - 1, refused.get());
+			// The other pin still holds the version
+			assertEquals(2, t.retainedVersionCount());
+			other.release();
+			assertEquals(1, t.retainedVersionCount());
+		}
+	}
+
+	@Test
+	public void testPinWhileWriting() throws InterruptedException {
+		final VersionedEditTree t = new VersionedEditTree();
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 10000; i++) {
+					t.add('a');
+				}
+			}
+		};
+		writer.start();
+		for (int i = 0; i < 1000; i++) {
+			VersionedEditTree.Version v = t.pin();
+			// Version n of a tree that only appends has n characters
+			assertEquals(v.number(), v.tree().size());
+			v.release();
+		}
+		writer.join();
+		assertEquals(10000, t.currentVersion());
+		assertEquals(1, t.retainedVersionCount());
+	}
+}